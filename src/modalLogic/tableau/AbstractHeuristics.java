@@ -0,0 +1,50 @@
+/* Copyright (c) 2010, Johannes Köster <johannes.koester@tu-dortmund.de>
+ * All rights reserved.
+ *
+ * This software is open-source under the BSD license; see "license.txt"
+ * for a description.
+ */
+
+package modalLogic.tableau;
+
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Adapter for heuristics that ignores the notifications about the search.
+ * Heuristics extending it only override the notifications they learn from.
+ *
+ * @author Johannes Köster <johannes.koester@tu-dortmund.de>
+ */
+public abstract class AbstractHeuristics<P> implements Heuristics<P> {
+  protected Tableau<P> tableau;
+
+  /**
+   * Constructor of class AbstractHeuristics.
+   *
+   * @param tableau the tableau
+   */
+  public AbstractHeuristics(Tableau<P> tableau) {
+    this.tableau = tableau;
+  }
+
+  @Override
+  public void clash(List<LabelledFormula<P>> clashing, BitSet levels) {
+  }
+
+  @Override
+  public void retracted(LabelledFormula<P> disjunction, LabelledFormula<P> disjunct) {
+  }
+
+  @Override
+  public void opened(LabelledFormula<P> disjunction) {
+  }
+
+  @Override
+  public void closed(LabelledFormula<P> disjunction) {
+  }
+
+  @Override
+  public void clear() {
+  }
+}
@@ -0,0 +1,207 @@
+/* Copyright (c) 2010, Johannes Köster <johannes.koester@tu-dortmund.de>
+ * All rights reserved.
+ *
+ * This software is open-source under the BSD license; see "license.txt"
+ * for a description.
+ */
+
+package modalLogic.tableau;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import modalLogic.formula.Formula;
+
+/**
+ * Activity based heuristics. The subformulas and propositions taking part in a
+ * clash, i.e. the clashing subformulas and the disjuncts chosen on the decision
+ * levels of the learned nogood, get their scores bumped. Scores decay with
+ * every clash, so that recent clashes weigh more. Disjuncts are selected by
+ * descending score, except for the disjunct that was last chosen for the
+ * disjunction and retracted without being refuted, which is selected first
+ * (phase saving). Structurally equal subformulas share their score. With a
+ * random seed, ties are broken randomly, e.g. to diversify a portfolio.
+ *
+ * @author Johannes Köster <johannes.koester@tu-dortmund.de>
+ */
+public class ActivityHeuristics<P> extends AbstractHeuristics<P> {
+  private static final double RESCALE_LIMIT = 1e100;
+
+  private double decay;
+  private double increment = 1;
+  // scores indexed by canonical subformula id and by proposition id
+  private double[] formulaScores = new double[16];
+  private double[] propositionScores = new double[16];
+  // index of the saved disjunct plus one, indexed by the id of the disjunction
+  private int[] phases = new int[16];
+  private long seed;
+  private Random random;
+
+  /**
+   * Constructor of class ActivityHeuristics with a decay of 0.95.
+   *
+   * @param tableau the tableau
+   */
+  public ActivityHeuristics(Tableau<P> tableau) {
+    this(tableau, 0.95);
+  }
+
+  /**
+   * Constructor of class ActivityHeuristics.
+   *
+   * @param tableau the tableau
+   * @param decay the factor scores are multiplied with on each clash, between 0 and 1
+   */
+  public ActivityHeuristics(Tableau<P> tableau, double decay) {
+    super(tableau);
+    if(decay <= 0 || decay > 1)
+      throw new IllegalArgumentException("The decay has to be in (0, 1].");
+    this.decay = decay;
+  }
+
+  /**
+   * Constructor of class ActivityHeuristics that breaks ties randomly.
+   *
+   * @param tableau the tableau
+   * @param decay the factor scores are multiplied with on each clash, between 0 and 1
+   * @param seed the random seed
+   */
+  public ActivityHeuristics(Tableau<P> tableau, double decay, long seed) {
+    this(tableau, decay);
+    this.seed = seed;
+    random = new Random(seed);
+  }
+
+  /**
+   * Returns the score of a subformula, including the score of its proposition
+   * if it is a literal.
+   *
+   * @param id the id of the subformula
+   * @return the score
+   */
+  public double getScore(int id) {
+    FormulaArena<P> arena = tableau.getArena();
+    int c = arena.getCanonical(id);
+    double score = (c < formulaScores.length) ? formulaScores[c] : 0;
+    int p = arena.getProposition(id);
+    if(p >= 0 && p < propositionScores.length)
+      score += propositionScores[p];
+    return score;
+  }
+
+  /**
+   * Selects the saved disjunct first, followed by the remaining ones ordered
+   * by descending score.
+   *
+   * @param disjunction the disjunction
+   * @return Iterator of disjuncts
+   */
+  @Override
+  public Iterator<Formula<P>> disjunctSelector(LabelledFormula<P> disjunction) {
+    FormulaArena<P> arena = tableau.getArena();
+    int id = disjunction.getFormulaId();
+    int n = arena.getChildCount(id);
+    int saved = (id < phases.length) ? phases[id] - 1 : -1;
+
+    int[] order = new int[n];
+    double[] scores = new double[n];
+    for(int i = 0; i < n; i++) {
+      // insertion sort, disjunctions are short
+      double score = (i == saved) ? Double.POSITIVE_INFINITY : getScore(arena.getChild(id, i));
+      if(random != null)
+        // far below a single bump, so that practically only ties are broken
+        score += random.nextDouble() * increment * 1e-6;
+      int j = i;
+      while(j > 0 && scores[j - 1] < score) {
+        order[j] = order[j - 1];
+        scores[j] = scores[j - 1];
+        j--;
+      }
+      order[j] = i;
+      scores[j] = score;
+    }
+
+    List<Formula<P>> disjuncts = new ArrayList<Formula<P>>(n);
+    for(int i : order)
+      disjuncts.add(arena.getFormula(arena.getChild(id, i)));
+    return disjuncts.iterator();
+  }
+
+  @Override
+  public void clash(List<LabelledFormula<P>> clashing, BitSet levels) {
+    for(LabelledFormula<P> lf : clashing)
+      bump(lf.getFormulaId());
+    for(int level = levels.nextSetBit(0); level >= 0; level = levels.nextSetBit(level + 1)) {
+      LabelledFormula<P> disjunction = tableau.getDisjunctions().get(level);
+      LabelledFormula<P> disjunct = (disjunction == null) ? null : tableau.getActiveDisjunct(disjunction);
+      if(disjunct != null)
+        bump(disjunct.getFormulaId());
+    }
+    // decaying all scores is the same as increasing the bump
+    increment /= decay;
+    if(increment > RESCALE_LIMIT)
+      rescale();
+  }
+
+  @Override
+  public void retracted(LabelledFormula<P> disjunction, LabelledFormula<P> disjunct) {
+    FormulaArena<P> arena = tableau.getArena();
+    int id = disjunction.getFormulaId();
+    for(int i = 0; i < arena.getChildCount(id); i++) {
+      if(arena.getChild(id, i) == disjunct.getFormulaId()) {
+        if(id >= phases.length)
+          phases = Arrays.copyOf(phases, Math.max(id + 1, 2 * phases.length));
+        phases[id] = i + 1;
+        return;
+      }
+    }
+  }
+
+  @Override
+  public void clear() {
+    Arrays.fill(formulaScores, 0);
+    Arrays.fill(propositionScores, 0);
+    Arrays.fill(phases, 0);
+    increment = 1;
+  }
+
+  @Override
+  public Heuristics<P> create(Tableau<P> tableau) {
+    if(random != null)
+      return new ActivityHeuristics<P>(tableau, decay, seed);
+    return new ActivityHeuristics<P>(tableau, decay);
+  }
+
+  /**
+   * Helper method to bump the score of a subformula and its proposition.
+   *
+   * @param id the id of the subformula
+   */
+  private void bump(int id) {
+    FormulaArena<P> arena = tableau.getArena();
+    int c = arena.getCanonical(id);
+    if(c >= formulaScores.length)
+      formulaScores = Arrays.copyOf(formulaScores, Math.max(c + 1, 2 * formulaScores.length));
+    formulaScores[c] += increment;
+    int p = arena.getProposition(id);
+    if(p >= 0) {
+      if(p >= propositionScores.length)
+        propositionScores = Arrays.copyOf(propositionScores, Math.max(p + 1, 2 * propositionScores.length));
+      propositionScores[p] += increment;
+    }
+  }
+
+  /**
+   * Helper method to scale all scores down before they overflow.
+   */
+  private void rescale() {
+    for(int i = 0; i < formulaScores.length; i++)
+      formulaScores[i] /= RESCALE_LIMIT;
+    for(int i = 0; i < propositionScores.length; i++)
+      propositionScores[i] /= RESCALE_LIMIT;
+    increment /= RESCALE_LIMIT;
+  }
+}
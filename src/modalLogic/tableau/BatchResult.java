@@ -0,0 +1,137 @@
+/* Copyright (c) 2010, Johannes Köster <johannes.koester@tu-dortmund.de>
+ * All rights reserved.
+ *
+ * This software is open-source under the BSD license; see "license.txt"
+ * for a description.
+ */
+
+package modalLogic.tableau;
+
+import modalLogic.formula.Formula;
+
+/**
+ * Result of the proof search for one formula of a batch, with statistics.
+ *
+ * @author Johannes Köster <johannes.koester@tu-dortmund.de>
+ */
+public class BatchResult<P> {
+  private int index;
+  private Formula<P> formula;
+  private TableauState state;
+  private BudgetLimit exhausted;
+  private long expansions;
+  private long backtracks;
+  private long time;
+  private RuntimeException error;
+
+  /**
+   * Constructor of class BatchResult.
+   *
+   * @param index the position of the formula in the batch or -1
+   * @param formula the formula
+   * @param state the state after the proof search
+   * @param budget the budget of the proof search
+   * @param time the time of the proof search in nanoseconds
+   * @param error the exception the proof search failed with or null
+   */
+  BatchResult(int index, Formula<P> formula, TableauState state, SearchBudget budget, long time,
+          RuntimeException error) {
+    this.index = index;
+    this.formula = formula;
+    this.state = state;
+    this.exhausted = budget.getExhausted();
+    this.expansions = budget.getExpansions();
+    this.backtracks = budget.getBacktracks();
+    this.time = time;
+    this.error = error;
+  }
+
+  /**
+   * Returns the position of the formula in the batch, starting with 0, or -1
+   * for a single formula (see BatchSolver.submit()).
+   *
+   * @return the index
+   */
+  public int getIndex() {
+    return index;
+  }
+
+  /**
+   * Returns the formula.
+   *
+   * @return the formula
+   */
+  public Formula<P> getFormula() {
+    return formula;
+  }
+
+  /**
+   * Returns the state after the proof search. It is UNKNOWN if the budget was
+   * exhausted and NOTINITIALIZED if the proof search failed.
+   *
+   * @return the state
+   */
+  public TableauState getState() {
+    return state;
+  }
+
+  /**
+   * Returns true if the formula is satisfiable.
+   *
+   * @return true if proof succesful
+   */
+  public boolean isSatisfiable() {
+    return state == TableauState.SATISFIABLE;
+  }
+
+  /**
+   * Returns the limit that stopped the proof search.
+   *
+   * @return the limit or null if the search was not stopped
+   */
+  public BudgetLimit getExhausted() {
+    return exhausted;
+  }
+
+  /**
+   * Returns the number of expansions.
+   *
+   * @return the number of expansions
+   */
+  public long getExpansions() {
+    return expansions;
+  }
+
+  /**
+   * Returns the number of backtracks.
+   *
+   * @return the number of backtracks
+   */
+  public long getBacktracks() {
+    return backtracks;
+  }
+
+  /**
+   * Returns the time of the proof search.
+   *
+   * @return the time in nanoseconds
+   */
+  public long getTime() {
+    return time;
+  }
+
+  /**
+   * Returns the exception the proof search failed with.
+   *
+   * @return the exception or null
+   */
+  public RuntimeException getError() {
+    return error;
+  }
+
+  @Override
+  public String toString() {
+    return index + ": " + state + " (" + expansions + " expansions, " + backtracks + " backtracks, "
+            + time / 1000000 + " ms)";
+  }
+}
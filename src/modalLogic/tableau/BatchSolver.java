@@ -0,0 +1,287 @@
+/* Copyright (c) 2010, Johannes Köster <johannes.koester@tu-dortmund.de>
+ * All rights reserved.
+ *
+ * This software is open-source under the BSD license; see "license.txt"
+ * for a description.
+ */
+
+package modalLogic.tableau;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import modalLogic.formula.Formula;
+
+/**
+ * Solver for batches of independent formulas on an executor. Every thread of
+ * the executor reuses one tableau, created from a configuration (see
+ * Tableau.create()), for all the formulas it solves. The tableau is cleared
+ * after each formula, but it stays attached to the thread with its learned
+ * nogoods and its cache, until the thread ends or the tableaux are released
+ * (see release()). Formulas are only read, so they are neither copied nor
+ * changed.
+ * <p>
+ * Formulas are taken from an iterator while results are consumed, with a
+ * bounded number of formulas in flight, so that batches of any size can be
+ * streamed. Results are returned in the order of the formulas or in the order
+ * of completion. Each formula can get a budget (see SearchBudget), so that a
+ * single hard formula cannot stall the batch.
+ *
+ * @author Johannes Köster <johannes.koester@tu-dortmund.de>
+ */
+public class BatchSolver<P> {
+  private ExecutorService executor;
+  private final Tableau<P> configuration;
+  private int maxPending = 256;
+  private long maxExpansions = Long.MAX_VALUE;
+  private long maxBacktracks = Long.MAX_VALUE;
+  private long timeout = 0;
+  private volatile ThreadLocal<Tableau<P>> tableaux = newTableaux();
+
+  /**
+   * Constructor of class BatchSolver.
+   *
+   * @param executor the executor the formulas are solved on
+   * @param configuration a tableau serving as prototype for the tableaux of the threads
+   */
+  public BatchSolver(ExecutorService executor, Tableau<P> configuration) {
+    this.executor = executor;
+    this.configuration = configuration;
+  }
+
+  /**
+   * Returns the maximum number of formulas in flight.
+   *
+   * @return the maximum number of formulas in flight
+   */
+  public int getMaxPending() {
+    return maxPending;
+  }
+
+  /**
+   * Sets the maximum number of formulas in flight. It should be a multiple of
+   * the number of threads of the executor.
+   *
+   * @param maxPending the maximum number of formulas in flight
+   */
+  public void setMaxPending(int maxPending) {
+    if(maxPending < 1)
+      throw new IllegalArgumentException("At least one formula has to be in flight.");
+    this.maxPending = maxPending;
+  }
+
+  /**
+   * Sets the maximum number of expansions per formula.
+   *
+   * @param maxExpansions the maximum number of expansions
+   */
+  public void setMaxExpansions(long maxExpansions) {
+    this.maxExpansions = maxExpansions;
+  }
+
+  /**
+   * Sets the maximum number of backtracks per formula.
+   *
+   * @param maxBacktracks the maximum number of backtracks
+   */
+  public void setMaxBacktracks(long maxBacktracks) {
+    this.maxBacktracks = maxBacktracks;
+  }
+
+  /**
+   * Sets the maximum time per formula, 0 for no limit.
+   *
+   * @param timeout the maximum time
+   * @param unit the unit of the timeout
+   */
+  public void setTimeout(long timeout, TimeUnit unit) {
+    this.timeout = unit.toMillis(timeout);
+  }
+
+  /**
+   * Release the tableaux of the threads of the executor. Running proof
+   * searches are not affected, later ones get new tableaux. The released
+   * tableaux are garbage collected even while the threads live on.
+   */
+  public void release() {
+    tableaux = newTableaux();
+  }
+
+  /**
+   * Solve a single formula. The formula belongs to no batch, so the index of
+   * its result is -1.
+   *
+   * @param formula the formula in negation normal form
+   * @return the future result
+   */
+  public Future<BatchResult<P>> submit(Formula<P> formula) {
+    return executor.submit(new Task(-1, formula));
+  }
+
+  /**
+   * Solve a collection of formulas and wait for the results.
+   *
+   * @param formulas the formulas in negation normal form
+   * @return the results in the order of the formulas
+   * @throws CancellationException if the thread was interrupted
+   */
+  public List<BatchResult<P>> solve(Collection<? extends Formula<P>> formulas) {
+    List<BatchResult<P>> results = new ArrayList<BatchResult<P>>(formulas.size());
+    Iterator<BatchResult<P>> it = solve(formulas.iterator(), true);
+    while(it.hasNext())
+      results.add(it.next());
+    return results;
+  }
+
+  /**
+   * Solve a stream of formulas. Formulas are taken from the given iterator
+   * while the results are consumed.
+   *
+   * @param formulas the formulas in negation normal form
+   * @param ordered true if the results are returned in the order of the
+   *        formulas, false if they are returned as they complete
+   * @return iterator of the results, next() throws CancellationException if
+   *         the thread was interrupted
+   */
+  public Iterator<BatchResult<P>> solve(Iterator<? extends Formula<P>> formulas, boolean ordered) {
+    return new Results(formulas, ordered);
+  }
+
+  /**
+   * Helper method to create the tableaux of the threads of the executor.
+   *
+   * @return the thread local tableaux
+   */
+  private ThreadLocal<Tableau<P>> newTableaux() {
+    return new ThreadLocal<Tableau<P>>() {
+      @Override
+      protected Tableau<P> initialValue() {
+        return configuration.create();
+      }
+    };
+  }
+
+  /**
+   * The proof search for one formula on the tableau of the current thread.
+   */
+  private class Task implements Callable<BatchResult<P>> {
+    private int index;
+    private Formula<P> formula;
+
+    Task(int index, Formula<P> formula) {
+      this.index = index;
+      this.formula = formula;
+    }
+
+    @Override
+    public BatchResult<P> call() {
+      Tableau<P> t = tableaux.get();
+      SearchBudget budget = new SearchBudget();
+      budget.setMaxExpansions(maxExpansions);
+      budget.setMaxBacktracks(maxBacktracks);
+      if(timeout > 0)
+        budget.setTimeout(timeout, TimeUnit.MILLISECONDS);
+
+      long start = System.nanoTime();
+      TableauState state;
+      RuntimeException error = null;
+      try {
+        t.setFormula(formula);
+        state = t.proofSearch(budget);
+      }
+      catch(RuntimeException e) {
+        state = TableauState.NOTINITIALIZED;
+        error = e;
+      }
+      finally {
+        // the branch of the formula is not needed by the next one
+        t.clear();
+      }
+      return new BatchResult<P>(index, formula, state, budget, System.nanoTime() - start, error);
+    }
+  }
+
+  /**
+   * Iterator of results that keeps a bounded number of formulas in flight.
+   */
+  private class Results implements Iterator<BatchResult<P>> {
+    private Iterator<? extends Formula<P>> formulas;
+    private boolean ordered;
+    private CompletionService<BatchResult<P>> completion;
+    private LinkedList<Future<BatchResult<P>>> pending = new LinkedList<Future<BatchResult<P>>>();
+    private int index = 0;
+
+    Results(Iterator<? extends Formula<P>> formulas, boolean ordered) {
+      this.formulas = formulas;
+      this.ordered = ordered;
+      if(!ordered)
+        completion = new ExecutorCompletionService<BatchResult<P>>(executor);
+    }
+
+    @Override
+    public boolean hasNext() {
+      fill();
+      return !pending.isEmpty();
+    }
+
+    @Override
+    public BatchResult<P> next() {
+      if(!hasNext())
+        throw new NoSuchElementException();
+      try {
+        Future<BatchResult<P>> future;
+        if(ordered)
+          future = pending.removeFirst();
+        else {
+          future = completion.take();
+          pending.remove(future);
+        }
+        return future.get();
+      }
+      catch(InterruptedException e) {
+        cancel();
+        Thread.currentThread().interrupt();
+        throw new CancellationException("The batch was interrupted.");
+      }
+      catch(ExecutionException e) {
+        cancel();
+        throw new IllegalStateException("The proof search of a formula failed.", e.getCause());
+      }
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException("Results cannot be removed.");
+    }
+
+    /**
+     * Helper method to submit formulas until the maximum number is in flight.
+     */
+    private void fill() {
+      while(pending.size() < maxPending && formulas.hasNext()) {
+        Task task = new Task(index++, formulas.next());
+        pending.add(ordered ? executor.submit(task) : completion.submit(task));
+      }
+    }
+
+    /**
+     * Helper method to cancel the formulas in flight.
+     */
+    private void cancel() {
+      for(Future<BatchResult<P>> future : pending)
+        future.cancel(true);
+      pending.clear();
+    }
+  }
+}
@@ -8,9 +8,13 @@ package modalLogic.tableau;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Comparator;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import modalLogic.formula.Formula;
 import modalLogic.formula.Literal;
 import org.apache.commons.collections15.iterators.IteratorChain;
 import util.Pair;
@@ -23,35 +27,88 @@ import util.Pair;
 public class Branch<P> {
 
   private Tableau<P> tableau;
-  private Comparator<P> propositionComparator;
-  private List<LabelledFormula<P>> unexpanded;
+  private Scheduler<P> unexpanded = new PriorityScheduler<P>();
+  private ArrayList<LabelledFormula<P>> units = new ArrayList<LabelledFormula<P>>();
+  private int pending = 0;
+  private Trail<P> trail = new Trail<P>();
+  private LinkedHashSet<World<P>> clashing = new LinkedHashSet<World<P>>();
 
   /**
    * Constructor of class Branch.
    *
    * @param tableau the tableau
-   * @param propositionComparator a comparator for propositions
    */
-  public Branch(Tableau<P> tableau, Comparator<P> propositionComparator) {
+  public Branch(Tableau<P> tableau) {
     this.tableau = tableau;
-    this.propositionComparator = propositionComparator;
-    unexpanded = new ArrayList<LabelledFormula<P>>();
   }
 
   /**
-   * Returns a list of unexpanded subformulas.
+   * Returns a list of unexpanded subformulas. Adding them to an empty branch
+   * in the returned order restores the schedule.
    *
    * @return a list of unexpanded subformulas
    */
   public List<LabelledFormula<P>> getUnexpanded() {
+    // drop the entries of removed subformulas and duplicates, keep the latest entry
+    List<LabelledFormula<P>> scheduled = unexpanded.getScheduled();
+    Map<LabelledFormula<P>, Boolean> seen = new IdentityHashMap<LabelledFormula<P>, Boolean>();
+    List<LabelledFormula<P>> compacted = new ArrayList<LabelledFormula<P>>(pending);
+    for(int i = scheduled.size() - 1; i >= 0; i--) {
+      LabelledFormula<P> lf = scheduled.get(i);
+      if(lf.isPending() && seen.put(lf, Boolean.TRUE) == null)
+        compacted.add(lf);
+    }
+    Collections.reverse(compacted);
+    return compacted;
+  }
+
+  /**
+   * Returns the scheduler deciding which subformula is expanded next.
+   *
+   * @return the scheduler
+   */
+  public Scheduler<P> getScheduler() {
     return unexpanded;
   }
 
+  /**
+   * Sets the scheduler deciding which subformula is expanded next. Already
+   * scheduled subformulas are handed over.
+   *
+   * @param scheduler the scheduler
+   */
+  public void setScheduler(Scheduler<P> scheduler) {
+    List<LabelledFormula<P>> scheduled = getUnexpanded();
+    unexpanded.clear();
+    scheduler.clear();
+    for(LabelledFormula<P> lf : scheduled)
+      scheduler.add(lf);
+    unexpanded = scheduler;
+  }
+
+  /**
+   * Returns the chronological trail of the subformulas on the branch.
+   *
+   * @return the trail
+   */
+  public Trail<P> getTrail() {
+    return trail;
+  }
+
   /**
    * Clears the list of unexpanded subformulas.
    */
   public void clear() {
+    for(LabelledFormula<P> lf : unexpanded.getScheduled()) {
+      if(lf.isPending() && lf.getType() == Formula.DISJUNCTION)
+        tableau.getHeuristics().closed(lf);
+      lf.setPending(false);
+    }
     unexpanded.clear();
+    units.clear();
+    pending = 0;
+    trail.clear();
+    clashing.clear();
   }
 
   /**
@@ -60,45 +117,118 @@ public class Branch<P> {
    * @param f the subformula
    */
   public void add(LabelledFormula<P> f) {
+    addExpanded(f);
+    unexpand(f);
+  }
+
+  /**
+   * Add a subformula to the branch without scheduling it for expansion.
+   *
+   * @param f the subformula
+   */
+  public void addExpanded(LabelledFormula<P> f) {
+    if (trail.contains(f))
+      return;
+    trail.push(f);
     if (f.getFormula() instanceof Literal) {
       f.getWorld().addLiteral(f);
+      updateClashing(f.getWorld());
+      tableau.getUnitPropagation().assigned(f);
     }
-    unexpanded.add(f);
+    tableau.getNogoods().assigned(f);
   }
 
   /**
-   * Returns an iterator over all clashes in the branch.
+   * Returns an iterator over all clashes in the branch. Only the worlds that
+   * are known to contain a clash are visited.
    *
    * @return the iterator
    */
   public Iterator<Pair<LabelledFormula<P>>> clashes() {
     IteratorChain<Pair<LabelledFormula<P>>> ites = new IteratorChain<Pair<LabelledFormula<P>>>();
-    for(World<P> w : tableau.getWorlds()) {
-      if(w.isClashing())
-        ites.addIterator(w.clashes());
+    for(World<P> w : clashing) {
+      ites.addIterator(w.clashes());
     }
     return ites;
   }
 
+  /**
+   * Returns true if the branch contains a clash.
+   *
+   * @return true if the branch contains a clash
+   */
+  public boolean isClashing() {
+    return !clashing.isEmpty();
+  }
+
+  /**
+   * Record whether a world contains a clash after its literals changed.
+   *
+   * @param w the world
+   */
+  public void updateClashing(World<P> w) {
+    if(w.isClashing())
+      clashing.add(w);
+    else
+      clashing.remove(w);
+  }
+
   /**
    * Add subformula to the unexpanded ones.
    *
    * @param lf the subformula
    */
   public void unexpand(LabelledFormula<P> lf) {
+    boolean opened = !lf.isPending();
+    if(opened) {
+      lf.setPending(true);
+      pending++;
+    }
     unexpanded.add(lf);
+    if(lf.getType() == Formula.DISJUNCTION) {
+      tableau.getUnitPropagation().watch(lf);
+      if(opened)
+        tableau.getHeuristics().opened(lf);
+    }
   }
 
   /**
-   * Return the last unexpanded formula.
+   * Schedule an unexpanded disjunction to be expanded before all other
+   * subformulas, because at most one of its disjuncts is not falsified.
+   *
+   * @param lf the disjunction
+   */
+  public void addUnit(LabelledFormula<P> lf) {
+    units.add(lf);
+  }
+
+  /**
+   * Return the unexpanded formula selected by the scheduler.
    * 
-   * @return the last unexpanded formula
+   * @return the next unexpanded formula
    */
   public LabelledFormula<P> unexpanded() {
-    if(unexpanded.isEmpty()) {
-      return null;
+    LabelledFormula<P> lf;
+    while(!units.isEmpty()) {
+      lf = units.remove(units.size() - 1);
+      if(lf.isPending()) {
+        lf.setPending(false);
+        pending--;
+        tableau.getHeuristics().closed(lf);
+        return lf;
+      }
+    }
+    while((lf = unexpanded.poll()) != null) {
+      // entries of removed subformulas are skipped lazily
+      if(lf.isPending()) {
+        lf.setPending(false);
+        pending--;
+        if(lf.getType() == Formula.DISJUNCTION)
+          tableau.getHeuristics().closed(lf);
+        return lf;
+      }
     }
-    return unexpanded.remove(unexpanded.size()-1);
+    return null;
   }
 
   /**
@@ -107,9 +237,19 @@ public class Branch<P> {
    * @param lf the subformula
    */
   public void remove(LabelledFormula<P> lf) {
-    unexpanded.remove(lf);
-    if(lf.getFormula() instanceof Literal)
+    if(lf.isPending()) {
+      lf.setPending(false);
+      pending--;
+      if(lf.getType() == Formula.DISJUNCTION)
+        tableau.getHeuristics().closed(lf);
+    }
+    if(!trail.contains(lf))
+      return;
+    trail.remove(lf);
+    if(lf.getFormula() instanceof Literal) {
       lf.getWorld().removeLiteral(lf);
+      updateClashing(lf.getWorld());
+    }
   }
 
   /**
@@ -129,6 +269,6 @@ public class Branch<P> {
    * @return the number of unexpanded subformulas
    */
   public int unexpandedSize() {
-    return unexpanded.size();
+    return pending;
   }
 }
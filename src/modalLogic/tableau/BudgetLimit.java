@@ -0,0 +1,17 @@
+/* Copyright (c) 2010, Johannes Köster <johannes.koester@tu-dortmund.de>
+ * All rights reserved.
+ *
+ * This software is open-source under the BSD license; see "license.txt"
+ * for a description.
+ */
+
+package modalLogic.tableau;
+
+/**
+ * Enumeration of the limits of a search budget.
+ *
+ * @author Johannes Köster <johannes.koester@tu-dortmund.de>
+ */
+public enum BudgetLimit {
+  DEADLINE, EXPANSIONS, BACKTRACKS, CANCELLED, INTERRUPTED;
+}
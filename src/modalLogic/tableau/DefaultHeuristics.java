@@ -11,24 +11,23 @@ import java.util.Iterator;
 import modalLogic.formula.Formula;
 
 /**
+ * Heuristics that selects the disjuncts in their natural order.
  *
  * @author Johannes Köster <johannes.koester@tu-dortmund.de>
  */
-public class DefaultHeuristics<P> implements Heuristics<P> {
-  protected Tableau<P> tableau;
-
+public class DefaultHeuristics<P> extends AbstractHeuristics<P> {
   /**
    * Constructor of class DefaultHeuristics.
    *
    * @param tableau the tableau
    */
   public DefaultHeuristics(Tableau<P> tableau) {
-    this.tableau = tableau;
+    super(tableau);
   }
 
   /**
-   * Selects permutation of disjuncts and returns an iterator.
-   * @todo implement more intelligent heuristic
+   * Selects permutation of disjuncts and returns an iterator. See class
+   * ActivityHeuristics for a more intelligent heuristic.
    *
    * @param disjunction the disjunction
    * @return Iterator of disjuncts
@@ -37,4 +36,9 @@ public class DefaultHeuristics<P> implements Heuristics<P> {
   public Iterator<Formula<P>> disjunctSelector(LabelledFormula<P> disjunction) {
     return disjunction.getFormula().iterator();
   }
+
+  @Override
+  public Heuristics<P> create(Tableau<P> tableau) {
+    return new DefaultHeuristics<P>(tableau);
+  }
 }
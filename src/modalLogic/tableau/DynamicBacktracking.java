@@ -7,12 +7,12 @@
 package modalLogic.tableau;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
-import java.util.HashSet;
 import java.util.Iterator;
-import java.util.Set;
+import java.util.List;
 import modalLogic.formula.Formula;
-import util.DescendingIterator;
 import util.Pair;
 
 /**
@@ -23,6 +23,11 @@ import util.Pair;
 public class DynamicBacktracking<P> {
 
   private Tableau<P> tableau;
+  // time of the last change of choice, indexed by decision level
+  private int[] changes = new int[16];
+  private int time = 0;
+  // disjunctions all disjuncts of which failed in the last clash
+  private List<LabelledFormula<P>> deadEnds = new ArrayList<LabelledFormula<P>>();
 
   /**
    * Constructor of class DynamicBacktracking.
@@ -34,77 +39,240 @@ public class DynamicBacktracking<P> {
   }
 
   /**
-   * Find the disjunction were backtracking takes place.
+   * Find the disjunction were backtracking takes place. The dependency sets of
+   * the clashing subformulas are merged, and the disjunction with the highest
+   * decision level among them is selected. The choices that led to the clash
+   * are learned as a nogood. Assumptions cannot be backtracked, but they are
+   * kept in the elimination explanation, so that it is dropped with them.
    *
    * @param clashes clashing pairs of subformulas
    * @return the selected disjunction to backtrack
    */
   public LabelledFormula<P> findBacktrackingPoint(Iterator<Pair<LabelledFormula<P>>> clashes) {
-    Set<Formula<P>> tempDisj = new HashSet<Formula<P>>();
+    BitSet dependencies = new BitSet();
+    List<LabelledFormula<P>> clashing = new ArrayList<LabelledFormula<P>>();
+    // the world of the clash, or null if the clashes occur in different worlds
+    World<P> world = null;
+    BitSet assumed = null;
+    deadEnds.clear();
     while (clashes.hasNext()) {
       for (LabelledFormula<P> f : clashes.next()) {
-        tempDisj.addAll(tableau.getParentDisj(f.getFormula()));
+        dependencies.or(f.getDependencies());
+        if (clashing.isEmpty())
+          world = f.getWorld();
+        else if (world != f.getWorld())
+          world = null;
+        clashing.add(f);
       }
     }
 
-    Iterator<LabelledFormula<P>> disj = new DescendingIterator<LabelledFormula<P>>(tableau.getDisjunctions());
-    while (disj.hasNext()) {
-      LabelledFormula<P> lf = disj.next();
-      Formula<P> f = lf.getFormula();
-      if (tempDisj.contains(f)) {
-        if (tableau.hasUnknownDisjunct(lf)) { // suspicious
-          LabelledFormula<P> activeDisjunct = tableau.getActiveDisjunct(lf);
-          tempDisj.remove(f);
-          activeDisjunct.setEliminationExplanation(tempDisj);
-          return lf;
+    for (int level = dependencies.length() - 1; level >= 0; level = dependencies.length() - 1) {
+      dependencies.clear(level);
+      LabelledFormula<P> lf = tableau.getDisjunctions().get(level);
+      if (lf == null) {
+        if (tableau.getDisjunctions().isAssumption(level)) {
+          if (assumed == null) {
+            assumed = new BitSet();
+          }
+          assumed.set(level);
         }
-
-        for (Formula<P> f1 : f) {
-        	if(!tableau.isBlocked(lf.getWorld(), f1)) {
-        		tempDisj.addAll(tableau.getLabelledFormula(lf.getWorld(), f1).getEliminationExplanation());
-        	}
+        // the explanation is incomplete, so the clash cannot be cached
+        world = null;
+        continue;
+      }
+      if (tableau.hasUnknownDisjunct(lf)) { // suspicious
+        if (assumed != null) {
+          dependencies.or(assumed);
         }
+        // the current choices of the explanation and this level form a nogood
+        BitSet nogood = (BitSet) dependencies.clone();
+        nogood.set(level);
+        if (world != null)
+          tableau.getSatisfiabilityCache().refuted(world, nogood);
+        tableau.getNogoods().learn(nogood);
+        tableau.getHeuristics().clash(clashing, nogood);
 
-        tempDisj.addAll(tableau.getParentDisj(f));
+        LabelledFormula<P> activeDisjunct = tableau.getActiveDisjunct(lf);
+        activeDisjunct.setEliminationExplanation(dependencies);
+        return lf;
+      }
 
-        World w = lf.getWorld();
-        LabelledFormula<P> reason = w.getReason();
-        if (reason != null) {
-          tempDisj.addAll(tableau.getParentDisj(reason.getFormula()));
+      // all disjuncts failed, combine the reasons of their elimination
+      deadEnds.add(lf);
+      FormulaArena<P> arena = tableau.getArena();
+      int id = lf.getFormulaId();
+      for (int i = 0; i < arena.getChildCount(id); i++) {
+        LabelledFormula<P> lf1 = tableau.getLabelledFormula(lf.getWorld(), arena.getChild(id, i));
+        if (lf1 != null) {
+          validate(lf1);
+          if (lf1.getState() == FormulaState.BLOCKED) {
+            dependencies.or(lf1.getEliminationExplanation());
+          }
         }
-
-        tempDisj.remove(lf.getFormula());
       }
+      dependencies.or(lf.getDependencies());
+      dependencies.clear(level);
     }
     return null;
   }
 
   /**
    * Perform actual backtracking. The next possible disjunct will be selected
-   * upon the applied heuristic.
+   * upon the applied heuristic. The new choice becomes the latest one, while the
+   * choices of higher decision levels are kept. Only the disjunctions all
+   * disjuncts of which failed in the clash are chosen again, which makes the
+   * search terminate.
    *
    * @param ldisjunction the labelled disjunction
    */
   public void dynamicBacktrack(LabelledFormula<P> ldisjunction) {
-    World w = ldisjunction.getWorld();
+    // the disjunctions that ran out of disjuncts have to be chosen again
+    for (LabelledFormula<P> lf : deadEnds) {
+      undoChoice(lf);
+    }
+    deadEnds.clear();
+
     LabelledFormula<P> lclashed = tableau.getActiveDisjunct(ldisjunction);
+    BitSet explanation = lclashed.getEliminationExplanation();
 
+    undoFormula(lclashed);
+    lclashed.setEliminationExplanation(explanation);
+    lclashed.setEliminationStamp(time);
     lclashed.setState(FormulaState.BLOCKED);
 
-    for (LabelledFormula<P> lf1 : tableau.getExplanationContains(ldisjunction.getFormula())) {
-      if (tableau.isLazy()) {
-        LabelledFormula<P> par = tableau.getLabelledFormula(lf1.getWorld(), lf1.getFormula().getParent());
-        undoFormula(lf1);
-        lf1.setState(FormulaState.UNKNOWN);
-        nextDisjunct(par);
-      } else {
-        lf1.setState(FormulaState.UNKNOWN);
-        lf1.getEliminationExplanation().clear();
+    retract(ldisjunction);
+
+    if (!ldisjunction.isDiscarded()) {
+      // the new choice is the latest one
+      tableau.getDisjunctions().remove(ldisjunction);
+      tableau.getDisjunctions().add(ldisjunction);
+      nextDisjunct(ldisjunction);
+    }
+  }
+
+  /**
+   * Retract all choices to restart the search from the root. Subformulas that
+   * do not depend on a choice stay on the branch, as well as eliminations that
+   * do not rely on one and the learned nogoods.
+   */
+  public void restart() {
+    retractChoices(0);
+  }
+
+  /**
+   * Retract an assumption, i.e. remove it and its resulting expansions from the
+   * branch, unblock the disjuncts whose elimination relied on it and release
+   * its decision level.
+   *
+   * @param lf the assumption
+   * @param level the decision level of the assumption
+   */
+  public void retractAssumption(LabelledFormula<P> lf, int level) {
+    undoFormula(lf);
+    tableau.getLabelledFormulas().remove(lf);
+    retract(level);
+    tableau.getDisjunctions().release(level);
+  }
+
+  /**
+   * Helper method to retract the choices of all decision levels above a given
+   * one.
+   *
+   * @param level the decision level
+   */
+  private void retractChoices(int level) {
+    ArrayList<LabelledFormula<P>> later = new ArrayList<LabelledFormula<P>>();
+    Iterator<LabelledFormula<P>> disj = tableau.getDisjunctions().descendingIterator();
+    while (disj.hasNext()) {
+      LabelledFormula<P> lf = disj.next();
+      if (lf.getDecisionLevel() <= level) {
+        break;
       }
+      later.add(lf);
+    }
+    for (LabelledFormula<P> lf : later) {
+      undoChoice(lf);
     }
+  }
 
-    undoFormula(lclashed);
-    nextDisjunct(ldisjunction);
+  /**
+   * Helper method to retract the choice of a disjunction and schedule it for
+   * expansion again. Eliminations of its disjuncts that do not rely on the
+   * retracted choices are kept.
+   *
+   * @param ldisjunction the disjunction
+   */
+  private void undoChoice(LabelledFormula<P> ldisjunction) {
+    // the disjunction may have been removed with the choice it depends on
+    if (ldisjunction.isDiscarded() || tableau.getDisjunctions().get(ldisjunction.getDecisionLevel()) != ldisjunction) {
+      return;
+    }
+    LabelledFormula<P> active = tableau.getActiveDisjunct(ldisjunction);
+    retract(ldisjunction);
+    tableau.getDisjunctions().remove(ldisjunction);
+    if (active != null) {
+      tableau.getHeuristics().retracted(ldisjunction, active);
+      undoFormula(active);
+      active.setState(FormulaState.UNKNOWN);
+    }
+    ldisjunction.setExpanded(false);
+    tableau.getBranch().unexpand(ldisjunction);
+  }
+
+  /**
+   * Check if the elimination of a blocked disjunct is still valid. In lazy mode,
+   * eliminations are not dropped when the choice of a disjunction in their
+   * explanation changes. Instead they are validated here when consulted.
+   *
+   * @param lf the labelled disjunct
+   */
+  public void validate(LabelledFormula<P> lf) {
+    if (!tableau.isLazy() || lf.getState() != FormulaState.BLOCKED) {
+      return;
+    }
+    BitSet explanation = lf.getEliminationExplanation();
+    for (int i = explanation.nextSetBit(0); i >= 0 && i < changes.length; i = explanation.nextSetBit(i + 1)) {
+      if (changes[i] > lf.getEliminationStamp()) {
+        lf.clearEliminationExplanation();
+        lf.setState(FormulaState.UNKNOWN);
+        return;
+      }
+    }
+  }
+
+  /**
+   * Helper method to unblock the disjuncts whose elimination relied on the
+   * current choice of a given disjunction, which is about to change.
+   *
+   * @param ldisjunction the disjunction
+   */
+  private void retract(LabelledFormula<P> ldisjunction) {
+    int level = ldisjunction.getDecisionLevel();
+    if (level >= 0) {
+      retract(level);
+    }
+  }
+
+  /**
+   * Helper method to unblock the disjuncts whose elimination relied on a given
+   * decision level.
+   *
+   * @param level the decision level
+   */
+  private void retract(int level) {
+    if (tableau.isLazy()) {
+      if (level >= changes.length) {
+        changes = Arrays.copyOf(changes, Math.max(level + 1, 2 * changes.length));
+      }
+      changes[level] = ++time;
+      return;
+    }
+    for (LabelledFormula<P> lf1 : tableau.getExplanationContains(level)) {
+      if (!lf1.isDiscarded()) {
+        lf1.clearEliminationExplanation();
+        lf1.setState(FormulaState.UNKNOWN);
+      }
+    }
   }
 
   /**
@@ -122,30 +290,124 @@ public class DynamicBacktracking<P> {
     }
     ldisjunct.setState(FormulaState.ACTIVE);
     tableau.addToBranch(ldisjunct, ldisjunction);
+    tableau.addEliminatedComplements(ldisjunction);
+  }
+
+  /**
+   * Semantic branching: add the complements of the eliminated disjuncts of a
+   * disjunction to the branch. The complement of a disjunct holds as long as
+   * the choices its elimination explanation refers to are kept, so it results
+   * from the active disjuncts of these decision levels and from the
+   * disjunction, but not from the current choice of the disjunction.
+   *
+   * @param ldisjunction the disjunction
+   */
+  public void addEliminatedComplements(LabelledFormula<P> ldisjunction) {
+    FormulaArena<P> arena = tableau.getArena();
+    World<P> w = ldisjunction.getWorld();
+    int id = ldisjunction.getFormulaId();
+    for (int i = 0; i < arena.getChildCount(id); i++) {
+      LabelledFormula<P> lf = tableau.getLabelledFormula(w, arena.getChild(id, i));
+      if (lf == null) {
+        continue;
+      }
+      validate(lf);
+      if (lf.getState() != FormulaState.BLOCKED
+              || (lf.complement != null && !lf.complement.isDiscarded())) {
+        continue;
+      }
+      // a second copy of a complement that already holds would share its disjuncts
+      LabelledFormula<P> existing = tableau.getLabelledFormula(w, arena.getComplement(lf.getFormulaId()));
+      if (existing != null && tableau.getBranch().getTrail().contains(existing)) {
+        continue;
+      }
+
+      BitSet explanation = lf.getEliminationExplanation();
+      Collection<LabelledFormula<P>> reasons = new ArrayList<LabelledFormula<P>>(explanation.cardinality() + 1);
+      reasons.add(ldisjunction);
+      for (int level = explanation.nextSetBit(0); level >= 0 && reasons != null; level = explanation.nextSetBit(level + 1)) {
+        LabelledFormula<P> d = tableau.getDisjunctions().get(level);
+        LabelledFormula<P> active = (d == null) ? null : tableau.getActiveDisjunct(d);
+        if (active == null) {
+          // the elimination can not be justified on the current branch
+          reasons = null;
+        } else {
+          reasons.add(active);
+        }
+      }
+      if (reasons == null) {
+        continue;
+      }
+
+      LabelledFormula<P> lc = tableau.label(w, arena.getComplement(lf.getFormulaId()));
+      BitSet dependencies = new BitSet();
+      for (LabelledFormula<P> r : reasons) {
+        r.addResultingFormula(lc);
+        dependencies.or(r.getDependencies());
+      }
+      lc.setDependencies(dependencies);
+      lc.setState(FormulaState.ACTIVE);
+      lf.complement = lc;
+      tableau.getBranch().add(lc);
+    }
   }
 
   /**
    * Helper method to remove a subformula and its resulting expansions from
-   * branch.
+   * branch. Only the subformulas that depend on the given one are visited,
+   * independent work that was done later stays on the branch.
    *
    * @param lf the subformula
    */
   public void undoFormula(LabelledFormula<P> lf) {
-    Collection<LabelledFormula<P>> fs =
-            new HashSet<LabelledFormula<P>>(tableau.getResultingFormulas(lf));
-    tableau.getBranch().remove(lf);
-
-    tableau.removeFromBranch(fs);
+    Collection<LabelledFormula<P>> fs = tableau.getResultingFormulas(lf);
 
+    tableau.getBranch().remove(lf);
+    undoExpansion(lf);
     lf.setExpanded(false);
+    lf.getResultingFormulas().clear();
 
-    tableau.removeFromExpandedDisjunctions(fs);
-
-    tableau.removeWorldsCausedBy(lf);
-    tableau.removeRelationsCausedBy(lf);
+    for (LabelledFormula<P> lf2 : fs) {
+      tableau.getBranch().remove(lf2);
+      undoExpansion(lf2);
+      tableau.getLabelledFormulas().remove(lf2);
+    }
 
+    // disjunctions that lost their propagated disjunct have to be expanded
+    // again, as well as possibility subformulas that lost their cached clash
     for (LabelledFormula<P> lf2 : fs) {
-      ((ArrayList<LabelledFormula<P>>) lf2.getFormula().getPayload()).remove(lf2);
+      LabelledFormula<P> origin = lf2.propagatedFrom;
+      if (origin != null && !origin.isDiscarded() && origin.isExpanded()
+              && tableau.getBranch().getTrail().contains(origin)) {
+        origin.setExpanded(false);
+        tableau.getBranch().unexpand(origin);
+      }
+    }
+  }
+
+  /**
+   * Helper method to revert the effects the expansion of a subformula had
+   * besides adding subformulas to the branch.
+   *
+   * @param lf the subformula
+   */
+  private void undoExpansion(LabelledFormula<P> lf) {
+    FormulaArena<P> arena = tableau.getArena();
+    switch (arena.getType(lf.getFormulaId())) {
+      case Formula.DISJUNCTION:
+        // the choice made for the disjunction is retracted
+        retract(lf);
+        tableau.getDisjunctions().remove(lf);
+        break;
+      case Formula.POSSIBILITY:
+        tableau.removeWorldsCausedBy(lf);
+        tableau.removeRelationsCausedBy(lf);
+        break;
+      case Formula.NECESSITY:
+        if (lf.isExpanded()) {
+          lf.getWorld().removeBoxFormula(arena.getChild(lf.getFormulaId(), 0));
+        }
+        break;
     }
   }
 }
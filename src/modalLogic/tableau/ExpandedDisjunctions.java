@@ -7,13 +7,168 @@
 
 package modalLogic.tableau;
 
-import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
 
 /**
- * A list of expanded disjunctions.
+ * The expanded disjunctions, i.e. the choice points of the tableau, ordered by
+ * the decision level their expansion opened. Assumptions open decision levels,
+ * too, but they are no choice points.
  * 
  * @author Johannes Köster <johannes.koester@tu-dortmund.de>
  */
-public class ExpandedDisjunctions<P> extends ArrayList<LabelledFormula<P>> {
+public class ExpandedDisjunctions<P> implements Iterable<LabelledFormula<P>> {
+  private TreeMap<Integer, LabelledFormula<P>> decisions =
+          new TreeMap<Integer, LabelledFormula<P>>();
+  private BitSet assumptions = new BitSet();
+  private int level = 0;
 
+  /**
+   * Record an expanded disjunction. The disjunction opens a new decision level.
+   *
+   * @param lf the disjunction
+   */
+  public void add(LabelledFormula<P> lf) {
+    add(lf, level + 1);
+  }
+
+  /**
+   * Record an expanded disjunction with a given decision level.
+   *
+   * @param lf the disjunction
+   * @param decisionLevel the decision level
+   */
+  public void add(LabelledFormula<P> lf, int decisionLevel) {
+    lf.setDecisionLevel(decisionLevel);
+    decisions.put(decisionLevel, lf);
+    level = Math.max(level, decisionLevel);
+  }
+
+  /**
+   * Remove an expanded disjunction. If it opened the highest decision level,
+   * the level is reused by the next disjunction.
+   *
+   * @param lf the disjunction
+   */
+  public void remove(LabelledFormula<P> lf) {
+    if(lf.getDecisionLevel() >= 0 && decisions.get(lf.getDecisionLevel()) == lf) {
+      decisions.remove(lf.getDecisionLevel());
+      if(lf.getDecisionLevel() == level)
+        updateLevel();
+    }
+    lf.setDecisionLevel(-1);
+  }
+
+  /**
+   * Open a decision level for an assumption.
+   *
+   * @return the decision level
+   */
+  public int assume() {
+    assumptions.set(++level);
+    return level;
+  }
+
+  /**
+   * Release the decision level of an assumption. If it is the highest decision
+   * level, the level is reused by the next disjunction.
+   *
+   * @param decisionLevel the decision level
+   */
+  public void release(int decisionLevel) {
+    assumptions.clear(decisionLevel);
+    if(decisionLevel == level)
+      updateLevel();
+  }
+
+  /**
+   * Returns true if a decision level was opened by an assumption.
+   *
+   * @param decisionLevel the decision level
+   * @return true if the level belongs to an assumption
+   */
+  public boolean isAssumption(int decisionLevel) {
+    return assumptions.get(decisionLevel);
+  }
+
+  /**
+   * Returns the disjunction that opened a given decision level.
+   *
+   * @param decisionLevel the decision level
+   * @return the disjunction or null
+   */
+  public LabelledFormula<P> get(int decisionLevel) {
+    return decisions.get(decisionLevel);
+  }
+
+  /**
+   * Returns the highest open decision level.
+   *
+   * @return the decision level
+   */
+  public int getLevel() {
+    return level;
+  }
+
+  /**
+   * Returns the number of expanded disjunctions.
+   *
+   * @return the number of expanded disjunctions
+   */
+  public int size() {
+    return decisions.size();
+  }
+
+  /**
+   * Copy the expanded disjunctions and assumptions to those of a cloned
+   * tableau. The decision levels are kept.
+   *
+   * @param copy the expanded disjunctions of the cloned tableau
+   * @param labelledFormulaMap the map from labelled formulas to cloned ones
+   */
+  public void copyTo(ExpandedDisjunctions<P> copy,
+          Map<LabelledFormula<P>, LabelledFormula<P>> labelledFormulaMap) {
+    for(Map.Entry<Integer, LabelledFormula<P>> e : decisions.entrySet())
+      copy.add(labelledFormulaMap.get(e.getValue()), e.getKey());
+    copy.assumptions.or(assumptions);
+    copy.level = level;
+  }
+
+  /**
+   * Clear the expanded disjunctions.
+   */
+  public void clear() {
+    decisions.clear();
+    assumptions.clear();
+    level = 0;
+  }
+
+  /**
+   * Helper method to lower the highest open decision level to the highest
+   * level still in use.
+   */
+  private void updateLevel() {
+    level = Math.max(decisions.isEmpty() ? 0 : decisions.lastKey(), assumptions.length() - 1);
+  }
+
+  /**
+   * Iterator over the expanded disjunctions, oldest first.
+   *
+   * @return the iterator
+   */
+  @Override
+  public Iterator<LabelledFormula<P>> iterator() {
+    return decisions.values().iterator();
+  }
+
+  /**
+   * Iterator over the expanded disjunctions, most recent first.
+   *
+   * @return the iterator
+   */
+  public Iterator<LabelledFormula<P>> descendingIterator() {
+    return decisions.descendingMap().values().iterator();
+  }
 }
@@ -0,0 +1,481 @@
+/* Copyright (c) 2010, Johannes Köster <johannes.koester@tu-dortmund.de>
+ * All rights reserved.
+ *
+ * This software is open-source under the BSD license; see "license.txt"
+ * for a description.
+ */
+
+package modalLogic.tableau;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import modalLogic.formula.Constant;
+import modalLogic.formula.Formula;
+
+/**
+ * Compiled representation of a formula in negation normal form. Each subformula
+ * gets a dense int id, and its type, negation flag, parent, children and
+ * proposition id are stored in primitive arrays indexed by that id. Children
+ * of a subformula occupy a contiguous range of the child array. The complements
+ * of subformulas are compiled on demand and cached. Structurally equal
+ * subformulas share a canonical id.
+ * <p>
+ * Copies of an arena share its arrays until either of them compiles another
+ * subformula (copy-on-write), so that copying is constant time.
+ *
+ * @author Johannes Köster <johannes.koester@tu-dortmund.de>
+ */
+public class FormulaArena<P> {
+  private Formula<P>[] formulas;
+  private short[] type;
+  private boolean[] negation;
+  private int[] parent;
+  private int[] proposition;
+  private int[] childStart;
+  private int[] childCount;
+  private int[] children;
+  private int[] complement;
+  private int[] canonical;
+  private int size = 0;
+  private int childrenSize = 0;
+  private Map<Formula<P>, Integer> ids = new IdentityHashMap<Formula<P>, Integer>();
+  private Map<List<Integer>, Integer> structures = new HashMap<List<Integer>, Integer>();
+  private int falsum = -1;
+  private PropositionInterner<P> propositions;
+  // true if the arrays may be shared with a copy
+  private boolean shared = false;
+
+  /**
+   * Constructor of class FormulaArena.
+   *
+   * @param propositionComparator the proposition comparator used to intern propositions
+   */
+  public FormulaArena(Comparator<P> propositionComparator) {
+    propositions = new PropositionInterner<P>(propositionComparator);
+    allocate(16);
+  }
+
+  /**
+   * Constructor of class FormulaArena that shares the arrays of another arena.
+   *
+   * @param arena the arena
+   */
+  private FormulaArena(FormulaArena<P> arena) {
+    formulas = arena.formulas;
+    type = arena.type;
+    negation = arena.negation;
+    parent = arena.parent;
+    proposition = arena.proposition;
+    childStart = arena.childStart;
+    childCount = arena.childCount;
+    children = arena.children;
+    complement = arena.complement;
+    canonical = arena.canonical;
+    size = arena.size;
+    childrenSize = arena.childrenSize;
+    ids = arena.ids;
+    structures = arena.structures;
+    falsum = arena.falsum;
+    propositions = arena.propositions;
+    shared = true;
+  }
+
+  /**
+   * Returns a copy of the arena in constant time. Subformulas keep their ids,
+   * and the arrays are copied when either arena is modified the next time.
+   *
+   * @return the copy
+   */
+  public FormulaArena<P> copy() {
+    shared = true;
+    return new FormulaArena<P>(this);
+  }
+
+  /**
+   * Forget all compiled subformulas.
+   */
+  public void clear() {
+    if(shared) {
+      // leave the arrays to the copies
+      formulas = null;
+      allocate(16);
+      ids = new IdentityHashMap<Formula<P>, Integer>();
+      structures = new HashMap<List<Integer>, Integer>();
+      propositions = propositions.copy();
+      shared = false;
+    }
+    else {
+      Arrays.fill(formulas, 0, size, null);
+      ids.clear();
+      structures.clear();
+    }
+    size = 0;
+    childrenSize = 0;
+    falsum = -1;
+    propositions.clear();
+  }
+
+  /**
+   * Replace compiled subformulas by other formula objects, e.g. by the clones
+   * of a formula. Ids and attributes are kept.
+   *
+   * @param formulaMap the subformulas and their replacements
+   */
+  public void replace(Map<Formula<P>, Formula<P>> formulaMap) {
+    unshare();
+    for(int id = 0; id < size; id++) {
+      Formula<P> f = formulaMap.get(formulas[id]);
+      if(f != null) {
+        ids.remove(formulas[id]);
+        formulas[id] = f;
+        ids.put(f, id);
+      }
+    }
+  }
+
+  /**
+   * Compile a formula and all its subformulas. If the parent of the formula is
+   * already compiled, the formula is appended to its children.
+   *
+   * @param f the formula
+   * @return the id of the formula
+   */
+  public int add(Formula<P> f) {
+    unshare();
+    int first = size;
+    register(f);
+
+    // breadth first, so that the children of each subformula get consecutive ids
+    LinkedList<Integer> queue = new LinkedList<Integer>();
+    queue.add(first);
+    while(!queue.isEmpty()) {
+      int id = queue.removeFirst();
+      childStart[id] = childrenSize;
+      childCount[id] = 0;
+      for(Formula<P> child : formulas[id]) {
+        int c = register(child);
+        parent[c] = id;
+        appendChild(id, c);
+        queue.add(c);
+      }
+    }
+
+    Integer p = (f.getParent() == null) ? null : ids.get(f.getParent());
+    if(p != null) {
+      parent[first] = p;
+      // move the children of the parent to the end, so that they stay contiguous
+      int start = childrenSize;
+      for(int i = 0; i < childCount[p]; i++) {
+        ensureChildren(childrenSize + 1);
+        children[childrenSize++] = children[childStart[p] + i];
+      }
+      childStart[p] = start;
+      appendChild(p, first);
+    }
+    return first;
+  }
+
+  /**
+   * Returns the complement of a subformula in negation normal form. It is
+   * compiled on first request and then looked up in constant time. The
+   * complement of the complement is the subformula itself.
+   *
+   * @param id the id
+   * @return the id of the complement
+   */
+  public int getComplement(int id) {
+    if(complement[id] < 0) {
+      unshare();
+      Formula<P> f = formulas[id].clone();
+      f.negate();
+      f.toNegationNormalForm();
+      int c = add(f);
+      complement[id] = c;
+      complement[c] = id;
+    }
+    return complement[id];
+  }
+
+  /**
+   * Returns the constant falsum. It is compiled on first request.
+   *
+   * @return the id of falsum
+   */
+  @SuppressWarnings("unchecked")
+  public int getFalsum() {
+    if(falsum < 0)
+      falsum = add(new Constant(false));
+    return falsum;
+  }
+
+  /**
+   * Returns true if falsum was already compiled.
+   *
+   * @return true if falsum is compiled
+   */
+  public boolean hasFalsum() {
+    return falsum >= 0;
+  }
+
+  /**
+   * Returns the canonical id of a subformula, i.e. the first compiled
+   * subformula that is structurally equal to it. Literals are compared by
+   * their interned proposition.
+   *
+   * @param id the id
+   * @return the canonical id
+   */
+  public int getCanonical(int id) {
+    if(canonical[id] < 0) {
+      unshare();
+      List<Integer> structure = new ArrayList<Integer>(childCount[id] + 3);
+      structure.add((int) type[id]);
+      structure.add(negation[id] ? 1 : 0);
+      structure.add(proposition[id]);
+      for(int i = 0; i < childCount[id]; i++)
+        structure.add(getCanonical(getChild(id, i)));
+      Integer c = structures.get(structure);
+      if(c == null) {
+        c = id;
+        structures.put(structure, c);
+      }
+      canonical[id] = c;
+    }
+    return canonical[id];
+  }
+
+  /**
+   * Returns true if the complement of a subformula was already compiled.
+   *
+   * @param id the id
+   * @return true if the complement is compiled
+   */
+  public boolean hasComplement(int id) {
+    return complement[id] >= 0;
+  }
+
+  /**
+   * Returns the number of compiled subformulas.
+   *
+   * @return the number of compiled subformulas
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Returns the id of a compiled subformula.
+   *
+   * @param f the subformula
+   * @return the id or -1 if the subformula is not compiled
+   */
+  public int getId(Formula<P> f) {
+    Integer id = ids.get(f);
+    return (id == null) ? -1 : id;
+  }
+
+  /**
+   * Returns the subformula with a given id.
+   *
+   * @param id the id
+   * @return the subformula
+   */
+  public Formula<P> getFormula(int id) {
+    return formulas[id];
+  }
+
+  /**
+   * Returns the type of a subformula (see class Formula).
+   *
+   * @param id the id
+   * @return the type
+   */
+  public short getType(int id) {
+    return type[id];
+  }
+
+  /**
+   * Returns true if a subformula is negated.
+   *
+   * @param id the id
+   * @return true if the subformula is negated
+   */
+  public boolean isNegation(int id) {
+    return negation[id];
+  }
+
+  /**
+   * Returns the parent of a subformula.
+   *
+   * @param id the id
+   * @return the id of the parent or -1 for the root
+   */
+  public int getParent(int id) {
+    return parent[id];
+  }
+
+  /**
+   * Returns the number of children of a subformula.
+   *
+   * @param id the id
+   * @return the number of children
+   */
+  public int getChildCount(int id) {
+    return childCount[id];
+  }
+
+  /**
+   * Returns a child of a subformula.
+   *
+   * @param id the id
+   * @param i the index of the child
+   * @return the id of the child
+   */
+  public int getChild(int id, int i) {
+    return children[childStart[id] + i];
+  }
+
+  /**
+   * Returns the interned proposition of a literal.
+   *
+   * @param id the id
+   * @return the proposition id or -1 if the subformula is no literal
+   */
+  public int getProposition(int id) {
+    return proposition[id];
+  }
+
+  /**
+   * Returns the number of interned propositions.
+   *
+   * @return the number of interned propositions
+   */
+  public int getPropositionCount() {
+    return propositions.size();
+  }
+
+  /**
+   * Returns the proposition with a given id.
+   *
+   * @param id the proposition id
+   * @return the proposition
+   */
+  public P getPropositionValue(int id) {
+    return propositions.get(id);
+  }
+
+  /**
+   * Returns the proposition interner.
+   *
+   * @return the proposition interner
+   */
+  public PropositionInterner<P> getPropositions() {
+    return propositions;
+  }
+
+  /**
+   * Helper method to take private copies of the arrays before modifying them.
+   */
+  private void unshare() {
+    if(!shared)
+      return;
+    formulas = formulas.clone();
+    type = type.clone();
+    negation = negation.clone();
+    parent = parent.clone();
+    proposition = proposition.clone();
+    childStart = childStart.clone();
+    childCount = childCount.clone();
+    children = children.clone();
+    complement = complement.clone();
+    canonical = canonical.clone();
+    ids = new IdentityHashMap<Formula<P>, Integer>(ids);
+    structures = new HashMap<List<Integer>, Integer>(structures);
+    propositions = propositions.copy();
+    shared = false;
+  }
+
+  /**
+   * Helper method to assign an id to a subformula and store its attributes.
+   *
+   * @param f the subformula
+   * @return the id
+   */
+  private int register(Formula<P> f) {
+    if(size == formulas.length) {
+      allocate(2 * size);
+    }
+    int id = size++;
+    formulas[id] = f;
+    type[id] = f.getType();
+    negation[id] = f.isNegation();
+    parent[id] = -1;
+    complement[id] = -1;
+    canonical[id] = -1;
+    proposition[id] = (f.getType() == Formula.LITERAL) ? propositions.intern(f.getProposition()) : -1;
+    ids.put(f, id);
+    return id;
+  }
+
+  /**
+   * Helper method to append a child to the child range of a subformula. The
+   * range has to be the last one in the child array.
+   *
+   * @param id the subformula
+   * @param child the child
+   */
+  private void appendChild(int id, int child) {
+    ensureChildren(childrenSize + 1);
+    children[childrenSize++] = child;
+    childCount[id]++;
+  }
+
+  /**
+   * Helper method to grow the child array.
+   *
+   * @param capacity the needed capacity
+   */
+  private void ensureChildren(int capacity) {
+    if(capacity > children.length) {
+      children = Arrays.copyOf(children, Math.max(capacity, 2 * children.length));
+    }
+  }
+
+  /**
+   * Helper method to grow the arrays indexed by subformula id.
+   *
+   * @param capacity the new capacity
+   */
+  @SuppressWarnings("unchecked")
+  private void allocate(int capacity) {
+    if(formulas == null) {
+      formulas = (Formula<P>[]) new Formula<?>[capacity];
+      type = new short[capacity];
+      negation = new boolean[capacity];
+      parent = new int[capacity];
+      proposition = new int[capacity];
+      complement = new int[capacity];
+      canonical = new int[capacity];
+      childStart = new int[capacity];
+      childCount = new int[capacity];
+      children = new int[capacity];
+    }
+    else {
+      formulas = Arrays.copyOf(formulas, capacity);
+      type = Arrays.copyOf(type, capacity);
+      negation = Arrays.copyOf(negation, capacity);
+      parent = Arrays.copyOf(parent, capacity);
+      proposition = Arrays.copyOf(proposition, capacity);
+      complement = Arrays.copyOf(complement, capacity);
+      canonical = Arrays.copyOf(canonical, capacity);
+      childStart = Arrays.copyOf(childStart, capacity);
+      childCount = Arrays.copyOf(childCount, capacity);
+    }
+  }
+}
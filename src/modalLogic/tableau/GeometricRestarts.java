@@ -0,0 +1,56 @@
+/* Copyright (c) 2010, Johannes Köster <johannes.koester@tu-dortmund.de>
+ * All rights reserved.
+ *
+ * This software is open-source under the BSD license; see "license.txt"
+ * for a description.
+ */
+
+package modalLogic.tableau;
+
+/**
+ * Restart policy with geometrically growing intervals.
+ *
+ * @author Johannes Köster <johannes.koester@tu-dortmund.de>
+ */
+public class GeometricRestarts implements RestartPolicy {
+  private int first;
+  private double factor;
+  private double interval;
+
+  /**
+   * Constructor of class GeometricRestarts with a first interval of 100
+   * backtracks and a factor of 1.5.
+   */
+  public GeometricRestarts() {
+    this(100, 1.5);
+  }
+
+  /**
+   * Constructor of class GeometricRestarts.
+   *
+   * @param first the number of backtracks before the first restart
+   * @param factor the factor each interval grows with
+   */
+  public GeometricRestarts(int first, double factor) {
+    this.first = first;
+    this.factor = factor;
+    reset();
+  }
+
+  @Override
+  public int nextInterval() {
+    int next = (int) Math.min(Integer.MAX_VALUE, interval);
+    interval *= factor;
+    return next;
+  }
+
+  @Override
+  public void reset() {
+    interval = first;
+  }
+
+  @Override
+  public RestartPolicy create() {
+    return new GeometricRestarts(first, factor);
+  }
+}
@@ -7,11 +7,17 @@
 
 package modalLogic.tableau;
 
+import java.util.BitSet;
 import java.util.Iterator;
+import java.util.List;
 import modalLogic.formula.Formula;
 
 /**
  * Provides interface of replacable heuristics used by tableau algorithm.
+ * Heuristics are informed about clashes, retracted choices and open
+ * disjunctions, their state is kept across backtracking and restarts.
+ * Heuristics that do not need all of these notifications extend
+ * AbstractHeuristics.
  * @author Johannes Köster <johannes.koester@tu-dortmund.de>
  */
 public interface Heuristics<P> {
@@ -23,4 +29,50 @@ public interface Heuristics<P> {
    * @return Iterator of disjuncts
    */
   public Iterator<Formula<P>> disjunctSelector(LabelledFormula<P> disjunction);
+
+  /**
+   * Report a clash that is resolved by backtracking.
+   *
+   * @param clashing the clashing subformulas
+   * @param levels the decision levels of the learned nogood
+   */
+  public void clash(List<LabelledFormula<P>> clashing, BitSet levels);
+
+  /**
+   * Report that the choice of a disjunction was retracted while its disjunct
+   * was not refuted, i.e. because an earlier choice changed or the search
+   * restarted.
+   *
+   * @param disjunction the disjunction
+   * @param disjunct the retracted disjunct
+   */
+  public void retracted(LabelledFormula<P> disjunction, LabelledFormula<P> disjunct);
+
+  /**
+   * Report that a disjunction is open, i.e. it was scheduled for expansion.
+   *
+   * @param disjunction the disjunction
+   */
+  public void opened(LabelledFormula<P> disjunction);
+
+  /**
+   * Report that an open disjunction is about to be expanded or was removed
+   * from the branch.
+   *
+   * @param disjunction the disjunction
+   */
+  public void closed(LabelledFormula<P> disjunction);
+
+  /**
+   * Forget everything learned about the current formula.
+   */
+  public void clear();
+
+  /**
+   * Create heuristics of the same kind and configuration for another tableau.
+   *
+   * @param tableau the tableau
+   * @return the new heuristics
+   */
+  public Heuristics<P> create(Tableau<P> tableau);
 }
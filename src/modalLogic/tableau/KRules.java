@@ -24,29 +24,41 @@ public class KRules<P> implements Rules<P> {
    */
   @Override
   public void conjunction(LabelledFormula<P> f, Tableau<P> tableau) {
-    for(Formula<P> f1 : f.getFormula()) {
-      LabelledFormula<P> lf1 = tableau.label(f.getWorld(), f1);
+    FormulaArena<P> arena = tableau.getArena();
+    int id = f.getFormulaId();
+    for(int i = 0; i < arena.getChildCount(id); i++) {
+      LabelledFormula<P> lf1 = tableau.label(f.getWorld(), arena.getChild(id, i));
       tableau.addToBranch(lf1, f);
       lf1.setState(FormulaState.ACTIVE);
     }
   }
 
   /**
-   * Disjunction expansion. Uses disjunct selection heuristic.
+   * Disjunction expansion. Uses disjunct selection heuristic. With semantic
+   * branching, the complements of the eliminated disjuncts are added as well.
    *
    * @param f the disjunction to expand
    * @param tableau the tableau
    */
   @Override
   public void disjunction(LabelledFormula<P> f, Tableau<P> tableau) {
+    // a disjunction with only one live disjunct is no choice point
+    if(tableau.getUnitPropagation().propagate(f))
+      return;
 
     Formula<P> f1 = tableau.getDisjunctSelector().selectNotBlockedDisjunct(f,
             tableau.getHeuristics().disjunctSelector(f));
 
-    LabelledFormula<P> lf1 = tableau.label(f.getWorld(), f1);
-    tableau.addToBranch(lf1, f);
+    // the disjunction opens a new decision level the disjunct depends on
     tableau.setExpandedDisjunction(f);
+    // a disjunction expanded again after backtracking keeps its disjuncts
+    LabelledFormula<P> lf1 = tableau.getLabelledFormula(f.getWorld(), f1);
+    if(lf1 == null)
+      lf1 = tableau.label(f.getWorld(), f1);
+    tableau.addToBranch(lf1, f);
     lf1.setState(FormulaState.ACTIVE);
+    // disjuncts that were eliminated before still have to be false
+    tableau.addEliminatedComplements(f);
   }
 
   /**
@@ -57,8 +69,13 @@ public class KRules<P> implements Rules<P> {
    */
   @Override
   public void diamond(LabelledFormula<P> f, Tableau<P> tableau) {
-    Formula<P> f1 = f.getFormula().getChild();
-    
+    FormulaArena<P> arena = tableau.getArena();
+    int f1 = arena.getChild(f.getFormulaId(), 0);
+
+    // the label set of the world may already be known to be (un)satisfiable
+    if(tableau.getSatisfiabilityCache().expand(f))
+      return;
+
     World<P> w0 = f.getWorld();
     World<P> w1 = tableau.newWorld();
     w1.setReason(f);
@@ -68,10 +85,11 @@ public class KRules<P> implements Rules<P> {
     tableau.addToBranch(lf1, f);
     lf1.setState(FormulaState.ACTIVE);
 
-    for(Formula<P> f2 : w0.getBoxFormulae()) {
+    for(int i = 0; i < w0.getBoxFormulaCount(); i++) {
+      int f2 = w0.getBoxFormula(i);
       LabelledFormula<P> lf2 = tableau.label(w1, f2);
       // third argument adds it as a result of the box formula, second as a result of the diamond formula
-      tableau.addToBranch(lf2, f, tableau.getLabelledFormula(w0, f2.getParent()));
+      tableau.addToBranch(lf2, f, tableau.getLabelledFormula(w0, arena.getParent(f2)));
       lf2.setState(FormulaState.ACTIVE);
     }
   }
@@ -84,14 +102,20 @@ public class KRules<P> implements Rules<P> {
    */
   @Override
   public void box(LabelledFormula<P> f, Tableau<P> tableau) {
-    Formula<P> f1 = f.getFormula().getChild();
+    int f1 = tableau.getArena().getChild(f.getFormulaId(), 0);
 
-    World w0 = f.getWorld();
-    for(World w1 : tableau.getSucc(w0)) {
+    World<P> w0 = f.getWorld();
+    for(World<P> w1 : tableau.getSucc(w0)) {
       LabelledFormula<P> lf1 = tableau.label(w1, f1);
-      tableau.addToBranch(lf1, f);
+      // the subformula also depends on the possibility subformula that created the world
+      if(w1.getReason() != null)
+        tableau.addToBranch(lf1, f, w1.getReason());
+      else
+        tableau.addToBranch(lf1, f);
       lf1.setState(FormulaState.ACTIVE);
     }
-    w0.getBoxFormulae().add(f1);
+    w0.addBoxFormula(f1);
+    // possibility subformulas closed by the cache have to create their worlds now
+    tableau.getSatisfiabilityCache().reopen(w0);
   }
 }
@@ -0,0 +1,324 @@
+/* Copyright (c) 2010, Johannes Köster <johannes.koester@tu-dortmund.de>
+ * All rights reserved.
+ *
+ * This software is open-source under the BSD license; see "license.txt"
+ * for a description.
+ */
+
+package modalLogic.tableau;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import modalLogic.formula.Formula;
+
+/**
+ * Immutable Kripke model extracted from an open branch of a tableau. Worlds
+ * are numbered densely, world 0 is the root world. The successors of the
+ * worlds are stored in compressed sparse row format, i.e. the successors of
+ * world w are successors[successorStart[w]] to successors[successorStart[w + 1] - 1],
+ * and the valuation is stored as one bitset over proposition ids per world,
+ * packed into a single array. A proposition is true in a world if and only if
+ * it occurs positive in the world.
+ * <p>
+ * Possibility subformulas closed by the satisfiability cache did not create a
+ * world on the branch. They get a world of the branch with the same label set
+ * as successor, or, if there is none, the model of a separate tableau for the
+ * label set.
+ *
+ * @author Johannes Köster <johannes.koester@tu-dortmund.de>
+ */
+public class KripkeModel<P> {
+  private PropositionInterner<P> propositions;
+  private int worldCount;
+  private int[] successorStart;
+  private int[] successors;
+  private int words;
+  private long[] valuation;
+
+  /**
+   * Constructor of class KripkeModel.
+   *
+   * @param tableau a tableau with an open and fully expanded branch
+   * @throws IllegalStateException if the label set of a closed possibility subformula is unsatisfiable
+   */
+  KripkeModel(Tableau<P> tableau) {
+    propositions = tableau.getArena().getPropositions().copy();
+    Worlds<P> worlds = tableau.getWorlds();
+
+    // dense ids in the order of the worlds, the root world first
+    int[] ids = new int[worlds.getCount()];
+    for(int i = 0; i < worlds.size(); i++)
+      ids[worlds.get(i).getId()] = i;
+    List<List<LabelledFormula<P>>> closed = new ArrayList<List<LabelledFormula<P>>>(worlds.size());
+    for(int i = 0; i < worlds.size(); i++)
+      closed.add(null);
+    Map<LabelledFormula<P>, World<P>> witnesses = tableau.getSatisfiabilityCache().getClosed();
+    for(LabelledFormula<P> f : witnesses.keySet()) {
+      int w = ids[f.getWorld().getId()];
+      if(closed.get(w) == null)
+        closed.set(w, new ArrayList<LabelledFormula<P>>(2));
+      closed.get(w).add(f);
+    }
+
+    List<KripkeModel<P>> submodels = new ArrayList<KripkeModel<P>>();
+    worldCount = worlds.size();
+    successorStart = new int[worldCount + 1];
+    successors = new int[Math.max(worldCount, 4)];
+    BitSet[] positive = new BitSet[worldCount];
+    int n = 0;
+    for(int i = 0; i < worlds.size(); i++) {
+      World<P> w = worlds.get(i);
+      successorStart[i] = n;
+      positive[i] = w.getPositive();
+      for(World<P> v : tableau.getSucc(w))
+        n = addSuccessor(n, ids[v.getId()]);
+      if(closed.get(i) == null)
+        continue;
+      for(LabelledFormula<P> f : closed.get(i)) {
+        World<P> witness = witnesses.get(f);
+        if(witness != null) {
+          if(!isSuccessor(i, n, ids[witness.getId()]))
+            n = addSuccessor(n, ids[witness.getId()]);
+        }
+        else {
+          // the root of the submodel, its worlds follow the worlds of the branch
+          n = addSuccessor(n, worldCount);
+          KripkeModel<P> submodel = solve(tableau.getSatisfiabilityCache().create(f));
+          submodels.add(submodel);
+          worldCount += submodel.worldCount;
+        }
+      }
+    }
+
+    // append the submodels
+    int[] mapping = new int[0];
+    int offset = worlds.size();
+    BitSet[] submodelPositive = new BitSet[worldCount - worlds.size()];
+    successorStart = Arrays.copyOf(successorStart, worldCount + 1);
+    for(KripkeModel<P> submodel : submodels) {
+      if(mapping.length < submodel.getPropositionCount())
+        mapping = new int[submodel.getPropositionCount()];
+      for(int p = 0; p < submodel.getPropositionCount(); p++)
+        mapping[p] = propositions.intern(submodel.getProposition(p));
+      for(int w = 0; w < submodel.worldCount; w++) {
+        successorStart[offset + w] = n;
+        for(int i = 0; i < submodel.getSuccessorCount(w); i++)
+          n = addSuccessor(n, offset + submodel.getSuccessor(w, i));
+        BitSet bits = new BitSet();
+        for(int p = 0; p < submodel.getPropositionCount(); p++) {
+          if(submodel.holds(w, p))
+            bits.set(mapping[p]);
+        }
+        submodelPositive[offset + w - worlds.size()] = bits;
+      }
+      offset += submodel.worldCount;
+    }
+    successorStart[worldCount] = n;
+    successors = Arrays.copyOf(successors, n);
+
+    words = (propositions.size() + 63) >>> 6;
+    valuation = new long[worldCount * words];
+    for(int w = 0; w < worldCount; w++) {
+      BitSet bits = (w < worlds.size()) ? positive[w] : submodelPositive[w - worlds.size()];
+      for(int p = bits.nextSetBit(0); p >= 0; p = bits.nextSetBit(p + 1))
+        valuation[w * words + (p >>> 6)] |= 1L << p;
+    }
+  }
+
+  /**
+   * Returns the number of worlds.
+   *
+   * @return the number of worlds
+   */
+  public int getWorldCount() {
+    return worldCount;
+  }
+
+  /**
+   * Returns the number of successors of a world.
+   *
+   * @param world the world
+   * @return the number of successors
+   */
+  public int getSuccessorCount(int world) {
+    return successorStart[world + 1] - successorStart[world];
+  }
+
+  /**
+   * Returns a successor of a world.
+   *
+   * @param world the world
+   * @param i the index of the successor
+   * @return the successor
+   */
+  public int getSuccessor(int world, int i) {
+    return successors[successorStart[world] + i];
+  }
+
+  /**
+   * Returns the number of propositions.
+   *
+   * @return the number of propositions
+   */
+  public int getPropositionCount() {
+    return propositions.size();
+  }
+
+  /**
+   * Returns the proposition with a given id.
+   *
+   * @param id the proposition id
+   * @return the proposition
+   */
+  public P getProposition(int id) {
+    return propositions.get(id);
+  }
+
+  /**
+   * Returns the id of a proposition.
+   *
+   * @param p the proposition
+   * @return the proposition id or -1 if the proposition does not occur in the model
+   */
+  public int getPropositionId(P p) {
+    return propositions.getId(p);
+  }
+
+  /**
+   * Returns true if a proposition is true in a world.
+   *
+   * @param world the world
+   * @param proposition the proposition id
+   * @return true if the proposition is true
+   */
+  public boolean holds(int world, int proposition) {
+    return (valuation[world * words + (proposition >>> 6)] & (1L << proposition)) != 0;
+  }
+
+  /**
+   * Returns the propositions that are true in a world.
+   *
+   * @param world the world
+   * @return the proposition ids
+   */
+  public BitSet getPropositions(int world) {
+    return BitSet.valueOf(Arrays.copyOfRange(valuation, world * words, (world + 1) * words));
+  }
+
+  /**
+   * Returns true if a formula is true in a world. Propositions that do not
+   * occur in the model are false.
+   *
+   * @param world the world
+   * @param f the formula
+   * @return true if the formula is true
+   */
+  public boolean satisfies(int world, Formula<P> f) {
+    boolean value;
+    switch(f.getType()) {
+      case Formula.CONSTANT:
+        value = true;
+        break;
+      case Formula.LITERAL:
+        int p = propositions.getId(f.getProposition());
+        value = p >= 0 && holds(world, p);
+        break;
+      case Formula.CONJUNCTION:
+        value = true;
+        for(int i = 0; i < f.getChildCount() && value; i++)
+          value = satisfies(world, f.getChild(i));
+        break;
+      case Formula.DISJUNCTION:
+        value = false;
+        for(int i = 0; i < f.getChildCount() && !value; i++)
+          value = satisfies(world, f.getChild(i));
+        break;
+      case Formula.IMPLICATION:
+        value = !satisfies(world, f.getChild(0)) || satisfies(world, f.getChild(1));
+        break;
+      case Formula.NECESSITY:
+        value = true;
+        for(int i = 0; i < getSuccessorCount(world) && value; i++)
+          value = satisfies(getSuccessor(world, i), f.getChild());
+        break;
+      case Formula.POSSIBILITY:
+        value = false;
+        for(int i = 0; i < getSuccessorCount(world) && !value; i++)
+          value = satisfies(getSuccessor(world, i), f.getChild());
+        break;
+      default:
+        throw new UnsupportedOperationException("Unsupported operator.");
+    }
+    return f.isNegation() ? !value : value;
+  }
+
+  /**
+   * Write the model world by world, one line per world with its true
+   * propositions and its successors, e.g. "s0: p q -> s1 s2".
+   *
+   * @param writer the writer
+   * @throws IOException if writing fails
+   */
+  public void write(Writer writer) throws IOException {
+    for(int w = 0; w < worldCount; w++) {
+      writer.write("s" + w + ":");
+      for(int p = 0; p < propositions.size(); p++) {
+        if(holds(w, p))
+          writer.write(" " + propositions.get(p));
+      }
+      writer.write(" ->");
+      for(int i = 0; i < getSuccessorCount(w); i++)
+        writer.write(" s" + getSuccessor(w, i));
+      writer.write("\n");
+    }
+    writer.flush();
+  }
+
+  /**
+   * Helper method to append a successor.
+   *
+   * @param n the number of successors so far
+   * @param successor the successor
+   * @return the new number of successors
+   */
+  private int addSuccessor(int n, int successor) {
+    if(n == successors.length)
+      successors = Arrays.copyOf(successors, 2 * n);
+    successors[n] = successor;
+    return n + 1;
+  }
+
+  /**
+   * Helper method to check if a world already has a given successor.
+   *
+   * @param world the world
+   * @param n the number of successors so far
+   * @param successor the successor
+   * @return true if the successor was added before
+   */
+  private boolean isSuccessor(int world, int n, int successor) {
+    for(int i = successorStart[world]; i < n; i++) {
+      if(successors[i] == successor)
+        return true;
+    }
+    return false;
+  }
+
+  /**
+   * Helper method to extract the model of the label set of a closed
+   * possibility subformula.
+   *
+   * @param t the tableau of the label set
+   * @return the model
+   */
+  private KripkeModel<P> solve(Tableau<P> t) {
+    if(!t.proofSearch())
+      throw new IllegalStateException("The label set of a closed possibility subformula is unsatisfiable.");
+    return new KripkeModel<P>(t);
+  }
+}
@@ -8,6 +8,7 @@
 package modalLogic.tableau;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import modalLogic.formula.Formula;
 
@@ -17,13 +18,38 @@ import modalLogic.formula.Formula;
  * @author Johannes Köster <johannes.koester@tu-dortmund.de>
  */
 public class LabelledFormula<P> {
+  private static final BitSet NONE = new BitSet(0);
+
   private Formula<P> formula;
-  private World world;
+  private int formulaId;
+  private World<P> world;
   private boolean expanded;
   private FormulaState state;
   private Collection<LabelledFormula<P>> resultingFormulae = new ArrayList<LabelledFormula<P>>();
-  private Collection<Formula<P>> eliminationExplanation = new ArrayList<Formula<P>>();
+  private BitSet eliminationExplanation = NONE;
+  private BitSet dependencies = NONE;
+  private Tableau<P> tableau;
+  private int decisionLevel = -1;
+  private boolean pending = false;
+  private boolean discarded = false;
+  private int mark = 0;
+  private int eliminationStamp = 0;
   private String toString;
+  // links of the chronological trail, managed by class Trail
+  LabelledFormula<P> trailPrev;
+  LabelledFormula<P> trailNext;
+  boolean onTrail = false;
+  // links of the literal lists of a world, managed by class World
+  LabelledFormula<P> literalPrev;
+  LabelledFormula<P> literalNext;
+  // watched disjuncts of a disjunction, managed by class UnitPropagation
+  int watch0 = -1;
+  int watch1 = -1;
+  // the disjunction this disjunct was propagated from, or the possibility
+  // subformula refuted by the satisfiability cache
+  LabelledFormula<P> propagatedFrom;
+  // the complement asserted for this eliminated disjunct by semantic branching
+  LabelledFormula<P> complement;
 
   /**
    * Constructor of class LabelledFormula.
@@ -32,27 +58,72 @@ public class LabelledFormula<P> {
    * @param f the subformula
    * @param tableau the tableau
    */
-  public LabelledFormula(World world, Formula<P> f, Tableau<P> tableau) {
-    this.formula = f;
+  public LabelledFormula(World<P> world, Formula<P> f, Tableau<P> tableau) {
+    this(world, tableau.getArena().getId(f), tableau);
+  }
+
+  /**
+   * Constructor of class LabelledFormula.
+   *
+   * @param world the world
+   * @param formulaId the id of the subformula in the compiled formula
+   * @param tableau the tableau
+   */
+  public LabelledFormula(World<P> world, int formulaId, Tableau<P> tableau) {
+    FormulaArena<P> arena = tableau.getArena();
+    this.formula = arena.getFormula(formulaId);
+    this.formulaId = formulaId;
     this.world = world;
-    expanded = f.getType() == Formula.LITERAL || f.getType() == Formula.CONSTANT;
-    ((Collection)f.getPayload()).add(this);
+    this.tableau = tableau;
+    short type = arena.getType(formulaId);
+    expanded = type == Formula.LITERAL || type == Formula.CONSTANT;
   }
 
   /**
-   * Returns the elimination explanation (blocking disjunctions; see dynamic backtracking)
-   * @return the elimination explanation
+   * Returns the elimination explanation (decision levels of the blocking
+   * disjunctions; see dynamic backtracking)
+   * @return the elimination explanation, must not be modified
    */
-  public Collection<Formula<P>> getEliminationExplanation() {
+  public BitSet getEliminationExplanation() {
     return eliminationExplanation;
   }
 
   /**
-   * Sets the elimination explanation (blocking disjunctions; see dynamic backtracking)
-   * @param formulas the elimination explanation
+   * Sets the elimination explanation (decision levels of the blocking
+   * disjunctions; see dynamic backtracking). The bitset is taken over and must
+   * not be modified afterwards.
+   * @param levels the elimination explanation
+   */
+  public void setEliminationExplanation(BitSet levels) {
+    tableau.getLabelledFormulas().updateEliminationExplanation(this, eliminationExplanation, levels);
+    eliminationExplanation = levels;
+  }
+
+  /**
+   * Clears the elimination explanation.
+   */
+  public void clearEliminationExplanation() {
+    setEliminationExplanation(NONE);
+  }
+
+  /**
+   * Returns the dependency set, i.e. the decision levels of the disjunctions
+   * this subformula depends on.
+   *
+   * @return the dependency set, must not be modified
+   */
+  public BitSet getDependencies() {
+    return dependencies;
+  }
+
+  /**
+   * Sets the dependency set. The bitset is taken over and must not be modified
+   * afterwards.
+   *
+   * @param dependencies the dependency set
    */
-  public void setEliminationExplanation(Collection<Formula<P>> formulas) {
-    eliminationExplanation = formulas;
+  public void setDependencies(BitSet dependencies) {
+    this.dependencies = dependencies;
   }
 
   /**
@@ -116,6 +187,123 @@ public class LabelledFormula<P> {
     expanded = true;
   }
 
+  /**
+   * Returns the highest decision level this subformula depends on.
+   *
+   * @return the decision level or 0 if it depends on no decision
+   */
+  public int getLevel() {
+    return Math.max(dependencies.length() - 1, 0);
+  }
+
+  /**
+   * Returns the decision level opened by the expansion of this disjunction.
+   *
+   * @return the decision level or -1 if this is no expanded disjunction
+   */
+  public int getDecisionLevel() {
+    return decisionLevel;
+  }
+
+  /**
+   * Sets the decision level opened by the expansion of this disjunction.
+   *
+   * @param decisionLevel the decision level or -1
+   */
+  public void setDecisionLevel(int decisionLevel) {
+    this.decisionLevel = decisionLevel;
+  }
+
+  /**
+   * Returns true if this subformula waits for expansion on the branch.
+   *
+   * @return true if this subformula waits for expansion
+   */
+  public boolean isPending() {
+    return pending;
+  }
+
+  /**
+   * Report whether this subformula waits for expansion on the branch.
+   *
+   * @param pending the pending state
+   */
+  public void setPending(boolean pending) {
+    this.pending = pending;
+  }
+
+  /**
+   * Returns true if this subformula was undone and removed from the tableau.
+   *
+   * @return true if this subformula was removed
+   */
+  public boolean isDiscarded() {
+    return discarded;
+  }
+
+  /**
+   * Report this subformula as removed from the tableau.
+   */
+  public void setDiscarded() {
+    discarded = true;
+  }
+
+  /**
+   * Returns the mark used to visit each subformula once when collecting
+   * resulting subformulas.
+   *
+   * @return the mark
+   */
+  int getMark() {
+    return mark;
+  }
+
+  /**
+   * Sets the mark used to visit each subformula once when collecting
+   * resulting subformulas.
+   *
+   * @param mark the mark
+   */
+  void setMark(int mark) {
+    this.mark = mark;
+  }
+
+  /**
+   * Returns the time the elimination explanation was recorded at.
+   *
+   * @return the time stamp
+   */
+  int getEliminationStamp() {
+    return eliminationStamp;
+  }
+
+  /**
+   * Sets the time the elimination explanation was recorded at.
+   *
+   * @param eliminationStamp the time stamp
+   */
+  void setEliminationStamp(int eliminationStamp) {
+    this.eliminationStamp = eliminationStamp;
+  }
+
+  /**
+   * Returns the id of the subformula in the compiled formula.
+   *
+   * @return the id
+   */
+  public int getFormulaId() {
+    return formulaId;
+  }
+
+  /**
+   * Returns the type of the subformula (see class Formula).
+   *
+   * @return the type
+   */
+  public short getType() {
+    return tableau.getArena().getType(formulaId);
+  }
+
   /**
    * Returns the actual subformula.
    *
@@ -125,6 +313,15 @@ public class LabelledFormula<P> {
     return formula;
   }
 
+  /**
+   * Replace the subformula by an equal formula object with the same id.
+   *
+   * @param f the formula object
+   */
+  void replaceFormula(Formula<P> f) {
+    formula = f;
+  }
+
   /**
    * Returns the world in which this subformula is satisfied.
    *
@@ -8,8 +8,14 @@
 package modalLogic.tableau;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import modalLogic.formula.Formula;
 
 /**
@@ -19,8 +25,15 @@ import modalLogic.formula.Formula;
  */
 public class LabelledFormulas<P> implements Iterable<LabelledFormula<P>> {
 
-  private ArrayList<LabelledFormula<P>> formulae =
-          new ArrayList<LabelledFormula<P>>();
+  private LinkedHashSet<LabelledFormula<P>> formulae =
+          new LinkedHashSet<LabelledFormula<P>>();
+  private ArrayList<Set<LabelledFormula<P>>> byFormula =
+          new ArrayList<Set<LabelledFormula<P>>>();
+  // labelled formulas by world id and subformula id, the first one is returned by get()
+  private ArrayList<Map<Integer, List<LabelledFormula<P>>>> index =
+          new ArrayList<Map<Integer, List<LabelledFormula<P>>>>();
+  private ArrayList<Set<LabelledFormula<P>>> explained =
+          new ArrayList<Set<LabelledFormula<P>>>();
   private Tableau<P> tableau;
 
   /**
@@ -36,6 +49,9 @@ public class LabelledFormulas<P> implements Iterable<LabelledFormula<P>> {
    */
   public void clear() {
     formulae.clear();
+    byFormula.clear();
+    index.clear();
+    explained.clear();
   }
 
   /**
@@ -45,29 +61,179 @@ public class LabelledFormulas<P> implements Iterable<LabelledFormula<P>> {
    * @param f the subformula
    * @return the labelled formula
    */
-  public LabelledFormula<P> newLabelledFormula(World w, Formula<P> f) {
-    LabelledFormula<P> lf = new LabelledFormula<P>(w, f, tableau);
+  public LabelledFormula<P> newLabelledFormula(World<P> w, Formula<P> f) {
+    return newLabelledFormula(w, tableau.getArena().getId(f));
+  }
+
+  /**
+   * Create new labelled formula.
+   *
+   * @param w the world
+   * @param id the id of the subformula in the compiled formula
+   * @return the labelled formula
+   */
+  public LabelledFormula<P> newLabelledFormula(World<P> w, int id) {
+    LabelledFormula<P> lf = new LabelledFormula<P>(w, id, tableau);
 
     formulae.add(lf);
-    
+    getByFormula(id).add(lf);
+
+    Map<Integer, List<LabelledFormula<P>>> labelled = worldIndex(w.getId());
+    List<LabelledFormula<P>> lfs = labelled.get(id);
+    if(lfs == null) {
+      lfs = new ArrayList<LabelledFormula<P>>(1);
+      labelled.put(id, lfs);
+    }
+    lfs.add(lf);
+
     return lf;
   }
 
+  /**
+   * Returns all labelled formulas of a given subformula.
+   *
+   * @param id the id of the subformula in the compiled formula
+   * @return the labelled formulas
+   */
+  public Set<LabelledFormula<P>> getByFormula(int id) {
+    while(byFormula.size() <= id)
+      byFormula.add(null);
+    Set<LabelledFormula<P>> lfs = byFormula.get(id);
+    if(lfs == null) {
+      lfs = new LinkedHashSet<LabelledFormula<P>>(4);
+      byFormula.set(id, lfs);
+    }
+    return lfs;
+  }
+
+  /**
+   * Returns the labelled formula for a given world and subformula.
+   *
+   * @param w the world
+   * @param f the subformula
+   * @return the labelled formula or null if the subformula is not labelled
+   * with the world
+   */
+  public LabelledFormula<P> get(World<P> w, Formula<P> f) {
+    int id = tableau.getArena().getId(f);
+    if(id < 0)
+      return null;
+    return get(w, id);
+  }
+
+  /**
+   * Returns the labelled formula for a given world and subformula id.
+   *
+   * @param w the world
+   * @param id the id of the subformula in the compiled formula
+   * @return the labelled formula or null if the subformula is not labelled
+   * with the world
+   */
+  public LabelledFormula<P> get(World<P> w, int id) {
+    if(w.getId() >= index.size())
+      return null;
+    Map<Integer, List<LabelledFormula<P>>> labelled = index.get(w.getId());
+    if(labelled == null)
+      return null;
+    List<LabelledFormula<P>> lfs = labelled.get(id);
+    return (lfs == null) ? null : lfs.get(0);
+  }
+
+  /**
+   * Remove a labelled formula from the indices.
+   *
+   * @param lf the labelled formula
+   */
+  public void remove(LabelledFormula<P> lf) {
+    lf.setDiscarded();
+    formulae.remove(lf);
+    updateEliminationExplanation(lf, lf.getEliminationExplanation(), null);
+
+    getByFormula(lf.getFormulaId()).remove(lf);
+
+    // another labelled formula with the same world and subformula may take over
+    Map<Integer, List<LabelledFormula<P>>> labelled = worldIndex(lf.getWorld().getId());
+    List<LabelledFormula<P>> lfs = labelled.get(lf.getFormulaId());
+    if(lfs != null && lfs.remove(lf) && lfs.isEmpty())
+      labelled.remove(lf.getFormulaId());
+  }
+
+  /**
+   * Replace the subformulas of the labelled formulas by other formula
+   * objects with the same ids (see FormulaArena.replace()).
+   *
+   * @param formulaMap the subformulas and their replacements
+   */
+  void replace(Map<Formula<P>, Formula<P>> formulaMap) {
+    for(LabelledFormula<P> lf : formulae) {
+      Formula<P> f = formulaMap.get(lf.getFormula());
+      if(f != null)
+        lf.replaceFormula(f);
+    }
+  }
+
+  /**
+   * Helper method to return the index of subformulas labelled with a given world.
+   *
+   * @param id the world id
+   * @return the map between subformula ids and labelled formulas
+   */
+  private Map<Integer, List<LabelledFormula<P>>> worldIndex(int id) {
+    while(index.size() <= id)
+      index.add(null);
+    Map<Integer, List<LabelledFormula<P>>> labelled = index.get(id);
+    if(labelled == null) {
+      labelled = new HashMap<Integer, List<LabelledFormula<P>>>();
+      index.set(id, labelled);
+    }
+    return labelled;
+  }
+
   /**
    * Return all labelled formulas the elimination explanation of which contains
-   * a given formula f.
+   * a given decision level.
    *
-   * @param f the formula
+   * @param level the decision level
    * @return the labelled formulas
    */
-  public Collection<LabelledFormula<P>> getEliminationExplanationContains(Formula<P> f) {
-    Collection<LabelledFormula<P>> lfs = new ArrayList<LabelledFormula<P>>();
-    for(LabelledFormula<P> lf : this) {
-      if(lf.getEliminationExplanation().contains(f))
+  public Collection<LabelledFormula<P>> getEliminationExplanationContains(int level) {
+    if(level >= explained.size() || explained.get(level) == null)
+      return new ArrayList<LabelledFormula<P>>(0);
+    return new ArrayList<LabelledFormula<P>>(explained.get(level));
+  }
+
+  /**
+   * Update the reverse index of elimination explanations when the explanation
+   * of a labelled formula changes.
+   *
+   * @param lf the labelled formula
+   * @param oldExplanation the previous explanation or null
+   * @param newExplanation the new explanation or null
+   */
+  void updateEliminationExplanation(LabelledFormula<P> lf,
+          BitSet oldExplanation, BitSet newExplanation) {
+    if(oldExplanation != null) {
+      for(int i = oldExplanation.nextSetBit(0); i >= 0; i = oldExplanation.nextSetBit(i + 1)) {
+        Set<LabelledFormula<P>> lfs = explained.get(i);
+        if(lfs != null) {
+          lfs.remove(lf);
+          if(lfs.isEmpty())
+            explained.set(i, null);
+        }
+      }
+    }
+    if(newExplanation != null) {
+      for(int i = newExplanation.nextSetBit(0); i >= 0; i = newExplanation.nextSetBit(i + 1)) {
+        while(explained.size() <= i)
+          explained.add(null);
+        Set<LabelledFormula<P>> lfs = explained.get(i);
+        if(lfs == null) {
+          lfs = new LinkedHashSet<LabelledFormula<P>>();
+          explained.set(i, lfs);
+        }
         lfs.add(lf);
+      }
     }
-
-    return lfs;
   }
 
   /**
@@ -0,0 +1,47 @@
+/* Copyright (c) 2010, Johannes Köster <johannes.koester@tu-dortmund.de>
+ * All rights reserved.
+ *
+ * This software is open-source under the BSD license; see "license.txt"
+ * for a description.
+ */
+
+package modalLogic.tableau;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Scheduler that always expands the latest unexpanded subformula.
+ *
+ * @author Johannes Köster <johannes.koester@tu-dortmund.de>
+ */
+public class LifoScheduler<P> implements Scheduler<P> {
+  private ArrayList<LabelledFormula<P>> stack = new ArrayList<LabelledFormula<P>>();
+
+  @Override
+  public void add(LabelledFormula<P> lf) {
+    stack.add(lf);
+  }
+
+  @Override
+  public LabelledFormula<P> poll() {
+    if(stack.isEmpty())
+      return null;
+    return stack.remove(stack.size() - 1);
+  }
+
+  @Override
+  public List<LabelledFormula<P>> getScheduled() {
+    return new ArrayList<LabelledFormula<P>>(stack);
+  }
+
+  @Override
+  public void clear() {
+    stack.clear();
+  }
+
+  @Override
+  public Scheduler<P> create() {
+    return new LifoScheduler<P>();
+  }
+}
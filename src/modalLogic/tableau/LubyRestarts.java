@@ -0,0 +1,70 @@
+/* Copyright (c) 2010, Johannes Köster <johannes.koester@tu-dortmund.de>
+ * All rights reserved.
+ *
+ * This software is open-source under the BSD license; see "license.txt"
+ * for a description.
+ */
+
+package modalLogic.tableau;
+
+/**
+ * Restart policy following the Luby sequence 1, 1, 2, 1, 1, 2, 4, 1, ...
+ * multiplied with a unit number of backtracks.
+ *
+ * @author Johannes Köster <johannes.koester@tu-dortmund.de>
+ */
+public class LubyRestarts implements RestartPolicy {
+  private int unit;
+  private int restarts = 0;
+
+  /**
+   * Constructor of class LubyRestarts with a unit of 100 backtracks.
+   */
+  public LubyRestarts() {
+    this(100);
+  }
+
+  /**
+   * Constructor of class LubyRestarts.
+   *
+   * @param unit the number of backtracks the sequence is multiplied with
+   */
+  public LubyRestarts(int unit) {
+    this.unit = unit;
+  }
+
+  @Override
+  public int nextInterval() {
+    return (int) Math.min(Integer.MAX_VALUE, (long) unit * luby(++restarts));
+  }
+
+  @Override
+  public void reset() {
+    restarts = 0;
+  }
+
+  @Override
+  public RestartPolicy create() {
+    return new LubyRestarts(unit);
+  }
+
+  /**
+   * Helper method to calculate an element of the Luby sequence.
+   *
+   * @param i the position, starting with 1
+   * @return the element
+   */
+  private static int luby(int i) {
+    // find the finished subsequence of length 2^k - 1 that contains i
+    int k = 1;
+    while((1 << k) - 1 < i)
+      k++;
+    while((1 << k) - 1 != i) {
+      i -= (1 << (k - 1)) - 1;
+      k = 1;
+      while((1 << k) - 1 < i)
+        k++;
+    }
+    return 1 << (k - 1);
+  }
+}
@@ -0,0 +1,30 @@
+/* Copyright (c) 2010, Johannes Köster <johannes.koester@tu-dortmund.de>
+ * All rights reserved.
+ *
+ * This software is open-source under the BSD license; see "license.txt"
+ * for a description.
+ */
+
+package modalLogic.tableau;
+
+/**
+ * Restart policy that never restarts.
+ *
+ * @author Johannes Köster <johannes.koester@tu-dortmund.de>
+ */
+public class NoRestarts implements RestartPolicy {
+
+  @Override
+  public int nextInterval() {
+    return -1;
+  }
+
+  @Override
+  public void reset() {
+  }
+
+  @Override
+  public RestartPolicy create() {
+    return new NoRestarts();
+  }
+}
@@ -0,0 +1,347 @@
+/* Copyright (c) 2010, Johannes Köster <johannes.koester@tu-dortmund.de>
+ * All rights reserved.
+ *
+ * This software is open-source under the BSD license; see "license.txt"
+ * for a description.
+ */
+package modalLogic.tableau;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import modalLogic.formula.Formula;
+
+/**
+ * Database of nogoods learned from clashes. A nogood is a set of labelled
+ * disjuncts that can not be on the branch together: if all but one of them
+ * are on the branch, the complement of the remaining one is added. Like
+ * disjunctions in unit propagation, each nogood watches two of its disjuncts
+ * that are not on the branch, and is only visited when one of them is added.
+ * Nogoods refer to their worlds directly, so nogoods about removed worlds
+ * never fire again. The database is bounded, when it is full the less active
+ * half of the nogoods is deleted.
+ *
+ * @author Johannes Köster <johannes.koester@tu-dortmund.de>
+ */
+public class Nogoods<P> {
+
+  private static final double DECAY = 0.95;
+
+  private Tableau<P> tableau;
+  // nogoods watching a subformula, indexed by its id
+  private ArrayList<List<Nogood<P>>> watches = new ArrayList<List<Nogood<P>>>();
+  private List<Nogood<P>> nogoods = new ArrayList<Nogood<P>>();
+  private int capacity = 2048;
+  private double increment = 1;
+
+  /**
+   * Constructor of class Nogoods.
+   *
+   * @param tableau the tableau
+   */
+  public Nogoods(Tableau<P> tableau) {
+    this.tableau = tableau;
+  }
+
+  /**
+   * Returns the maximum number of stored nogoods.
+   *
+   * @return the capacity
+   */
+  public int getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * Sets the maximum number of stored nogoods. A capacity of 0 disables
+   * learning.
+   *
+   * @param capacity the capacity
+   */
+  public void setCapacity(int capacity) {
+    this.capacity = capacity;
+    if(nogoods.size() > capacity)
+      reduce(capacity);
+  }
+
+  /**
+   * Returns the number of stored nogoods.
+   *
+   * @return the number of stored nogoods
+   */
+  public int size() {
+    return nogoods.size();
+  }
+
+  /**
+   * Forget all nogoods.
+   */
+  public void clear() {
+    watches.clear();
+    nogoods.clear();
+    increment = 1;
+  }
+
+  /**
+   * Learn a nogood from the decision levels a clash depends on. The active
+   * disjuncts of these levels can not be on the branch together. The disjuncts
+   * of the two highest levels are watched, as they are removed first.
+   *
+   * @param levels the decision levels
+   */
+  public void learn(BitSet levels) {
+    if(capacity == 0 || levels.isEmpty())
+      return;
+    int n = levels.cardinality();
+    Nogood<P> nogood = new Nogood<P>(n);
+    int i = 0;
+    for(int level = levels.nextSetBit(0); level >= 0; level = levels.nextSetBit(level + 1), i++) {
+      LabelledFormula<P> disjunction = tableau.getDisjunctions().get(level);
+      LabelledFormula<P> disjunct = (disjunction == null) ? null : tableau.getActiveDisjunct(disjunction);
+      if(disjunct == null)
+        return;
+      nogood.worlds[i] = disjunct.getWorld();
+      nogood.formulas[i] = disjunct.getFormulaId();
+    }
+    nogood.watch0 = n - 1;
+    nogood.watch1 = n - 2;
+
+    if(nogoods.size() >= capacity)
+      reduce(capacity / 2);
+    bump(nogood);
+    increment /= DECAY;
+    nogoods.add(nogood);
+    addWatches(nogood);
+  }
+
+  /**
+   * Visit the nogoods watching a labelled formula that was added to the
+   * branch. Each of them watches another disjunct that is not on the branch
+   * instead. If there is none, the nogood is unit and the complement of its
+   * other watched disjunct is added.
+   *
+   * @param lf the labelled formula
+   */
+  public void assigned(LabelledFormula<P> lf) {
+    int id = lf.getFormulaId();
+    if(id >= watches.size() || watches.get(id) == null)
+      return;
+    List<Nogood<P>> watching = watches.get(id);
+    int k = 0;
+    while(k < watching.size()) {
+      Nogood<P> nogood = watching.get(k);
+      int watched = nogood.watched(lf.getWorld(), id);
+      if(watched < 0) {
+        // the nogood watches the subformula in another world
+        k++;
+        continue;
+      }
+      int replacement = findWatch(nogood);
+      if(replacement >= 0) {
+        if(watched == nogood.watch0)
+          nogood.watch0 = replacement;
+        else
+          nogood.watch1 = replacement;
+        removeWatch(watching, k);
+        indexed(nogood.formulas[replacement]).add(nogood);
+      }
+      else {
+        int other = (watched == nogood.watch0) ? nogood.watch1 : nogood.watch0;
+        // if all disjuncts are on the branch, the complement leads to a clash
+        propagate(nogood, (other < 0 || isOnBranch(nogood, other)) ? watched : other, lf);
+        k++;
+      }
+    }
+  }
+
+  /**
+   * Helper method to add the complement of a disjunct of a nogood. All other
+   * disjuncts of the nogood are on the branch.
+   *
+   * @param nogood the nogood
+   * @param open the position of the disjunct
+   * @param lf the disjunct that was just added
+   */
+  private void propagate(Nogood<P> nogood, int open, LabelledFormula<P> lf) {
+    if(nogood.asserted != null && !nogood.asserted.isDiscarded()
+            && tableau.getBranch().getTrail().contains(nogood.asserted))
+      return;
+
+    World<P> w = nogood.worlds[open];
+    if(w.getReason() != null && !tableau.getWorlds().contains(w))
+      // the world was removed, the nogood is obsolete
+      return;
+
+    FormulaArena<P> arena = tableau.getArena();
+    int c = arena.getComplement(nogood.formulas[open]);
+    // a complementary literal that is already there, e.g. by semantic branching
+    if(arena.getType(c) == Formula.LITERAL && w.getLiteral(arena.getProposition(c), arena.isNegation(c)) != null)
+      return;
+    // a second copy of a complement that already holds would share its disjuncts
+    LabelledFormula<P> existing = tableau.getLabelledFormula(w, c);
+    if(existing != null && tableau.getBranch().getTrail().contains(existing))
+      return;
+
+    int n = nogood.formulas.length;
+    List<LabelledFormula<P>> reasons = new ArrayList<LabelledFormula<P>>(n);
+    for(int i = 0; i < n; i++) {
+      if(i == open)
+        continue;
+      // the disjunct just added may be a copy of the one labelled first
+      if(nogood.worlds[i] == lf.getWorld() && nogood.formulas[i] == lf.getFormulaId())
+        reasons.add(lf);
+      else
+        reasons.add(tableau.getLabelledFormula(nogood.worlds[i], nogood.formulas[i]));
+    }
+    if(w.getReason() != null)
+      reasons.add(w.getReason());
+
+    LabelledFormula<P> complement = tableau.label(w, c);
+    w.setLearnedFormulas();
+    nogood.asserted = complement;
+    bump(nogood);
+    tableau.addToBranch(complement, reasons.toArray(newArray(reasons.size())));
+    complement.setState(FormulaState.ACTIVE);
+  }
+
+  /**
+   * Helper method to find a disjunct of a nogood to watch that is not on the
+   * branch.
+   *
+   * @param nogood the nogood
+   * @return the position of the disjunct or -1 if there is none
+   */
+  private int findWatch(Nogood<P> nogood) {
+    for(int i = 0; i < nogood.formulas.length; i++) {
+      if(i != nogood.watch0 && i != nogood.watch1 && !isOnBranch(nogood, i))
+        return i;
+    }
+    return -1;
+  }
+
+  /**
+   * Helper method to check if a disjunct of a nogood is on the branch.
+   *
+   * @param nogood the nogood
+   * @param i the position of the disjunct
+   * @return true if the disjunct is on the branch
+   */
+  private boolean isOnBranch(Nogood<P> nogood, int i) {
+    LabelledFormula<P> member = tableau.getLabelledFormula(nogood.worlds[i], nogood.formulas[i]);
+    return member != null && member.getWorld() == nogood.worlds[i]
+            && tableau.getBranch().getTrail().contains(member);
+  }
+
+  /**
+   * Helper method to add a nogood to the watches of its watched disjuncts.
+   *
+   * @param nogood the nogood
+   */
+  private void addWatches(Nogood<P> nogood) {
+    indexed(nogood.formulas[nogood.watch0]).add(nogood);
+    if(nogood.watch1 >= 0)
+      indexed(nogood.formulas[nogood.watch1]).add(nogood);
+  }
+
+  /**
+   * Helper method to remove an entry from a watch list.
+   *
+   * @param watching the watch list
+   * @param k the index of the entry
+   */
+  private void removeWatch(List<Nogood<P>> watching, int k) {
+    int last = watching.size() - 1;
+    watching.set(k, watching.get(last));
+    watching.remove(last);
+  }
+
+  /**
+   * Helper method to increase the activity of a nogood.
+   *
+   * @param nogood the nogood
+   */
+  private void bump(Nogood<P> nogood) {
+    nogood.activity += increment;
+    if(nogood.activity > 1e100) {
+      for(Nogood<P> other : nogoods)
+        other.activity *= 1e-100;
+      nogood.activity *= 1e-100;
+      increment *= 1e-100;
+    }
+  }
+
+  /**
+   * Helper method to delete the least active nogoods.
+   *
+   * @param size the number of nogoods to keep
+   */
+  private void reduce(int size) {
+    Collections.sort(nogoods, new Comparator<Nogood<P>>() {
+      @Override
+      public int compare(Nogood<P> n0, Nogood<P> n1) {
+        return Double.compare(n1.activity, n0.activity);
+      }
+    });
+    nogoods.subList(size, nogoods.size()).clear();
+    watches.clear();
+    for(Nogood<P> nogood : nogoods)
+      addWatches(nogood);
+  }
+
+  /**
+   * Helper method to return the nogoods watching a subformula.
+   *
+   * @param id the id of the subformula
+   * @return the nogoods
+   */
+  private List<Nogood<P>> indexed(int id) {
+    while(watches.size() <= id)
+      watches.add(null);
+    List<Nogood<P>> watching = watches.get(id);
+    if(watching == null) {
+      watching = new ArrayList<Nogood<P>>(2);
+      watches.set(id, watching);
+    }
+    return watching;
+  }
+
+  /**
+   * Helper method to create an array of labelled formulas.
+   *
+   * @param size the size
+   * @return the array
+   */
+  @SuppressWarnings("unchecked")
+  private LabelledFormula<P>[] newArray(int size) {
+    return (LabelledFormula<P>[]) new LabelledFormula<?>[size];
+  }
+
+  /**
+   * A learned nogood.
+   */
+  private static class Nogood<P> {
+    World<P>[] worlds;
+    int[] formulas;
+    int watch0;
+    int watch1;
+    double activity = 0;
+    // the complement added by the last propagation
+    LabelledFormula<P> asserted;
+
+    @SuppressWarnings("unchecked")
+    Nogood(int size) {
+      worlds = (World<P>[]) new World<?>[size];
+      formulas = new int[size];
+    }
+
+    int watched(World<P> w, int id) {
+      if(worlds[watch0] == w && formulas[watch0] == id)
+        return watch0;
+      if(watch1 >= 0 && worlds[watch1] == w && formulas[watch1] == id)
+        return watch1;
+      return -1;
+    }
+  }
+}
@@ -0,0 +1,202 @@
+/* Copyright (c) 2010, Johannes Köster <johannes.koester@tu-dortmund.de>
+ * All rights reserved.
+ *
+ * This software is open-source under the BSD license; see "license.txt"
+ * for a description.
+ */
+
+package modalLogic.tableau;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import modalLogic.formula.Formula;
+
+/**
+ * Heuristics that orders disjuncts by their occurrences in the open, i.e. not
+ * yet expanded disjunctions of the same world. Structurally equal disjuncts
+ * are counted together. The weighting is either MOMS, i.e. the occurrences in
+ * the open disjunctions of minimum size, or Jeroslow-Wang, i.e. the sum of
+ * 2^-n over the open disjunctions of size n the disjunct occurs in.
+ * <p>
+ * The occurrences are counted incrementally when disjunctions are opened and
+ * closed on the branch.
+ *
+ * @author Johannes Köster <johannes.koester@tu-dortmund.de>
+ */
+public class OccurrenceHeuristics<P> extends AbstractHeuristics<P> {
+  /**
+   * Maximum occurrences in minimum size disjunctions.
+   */
+  public static final int MOMS = 0;
+  /**
+   * Jeroslow-Wang weighting.
+   */
+  public static final int JEROSLOW_WANG = 1;
+
+  private int weighting;
+  private Map<World<P>, Occurrences> occurrences = new IdentityHashMap<World<P>, Occurrences>();
+
+  /**
+   * Constructor of class OccurrenceHeuristics with Jeroslow-Wang weighting.
+   *
+   * @param tableau the tableau
+   */
+  public OccurrenceHeuristics(Tableau<P> tableau) {
+    this(tableau, JEROSLOW_WANG);
+  }
+
+  /**
+   * Constructor of class OccurrenceHeuristics.
+   *
+   * @param tableau the tableau
+   * @param weighting MOMS or JEROSLOW_WANG
+   */
+  public OccurrenceHeuristics(Tableau<P> tableau, int weighting) {
+    super(tableau);
+    if(weighting != MOMS && weighting != JEROSLOW_WANG)
+      throw new IllegalArgumentException("Unknown weighting " + weighting + ".");
+    this.weighting = weighting;
+  }
+
+  /**
+   * Returns the weight of a subformula in a world.
+   *
+   * @param w the world
+   * @param id the id of the subformula
+   * @return the weight
+   */
+  public double getWeight(World<P> w, int id) {
+    Occurrences o = occurrences.get(w);
+    if(o == null)
+      return 0;
+    int c = tableau.getArena().getCanonical(id);
+    if(weighting == MOMS) {
+      for(int size = 0; size < o.disjunctions.length; size++) {
+        if(o.disjunctions[size] > 0)
+          return o.count(size, c);
+      }
+      return 0;
+    }
+    double weight = 0;
+    for(int size = 0; size < o.disjunctions.length; size++) {
+      if(o.disjunctions[size] > 0)
+        weight += Math.scalb((double) o.count(size, c), -size);
+    }
+    return weight;
+  }
+
+  /**
+   * Selects the disjuncts ordered by descending weight.
+   *
+   * @param disjunction the disjunction
+   * @return Iterator of disjuncts
+   */
+  @Override
+  public Iterator<Formula<P>> disjunctSelector(LabelledFormula<P> disjunction) {
+    FormulaArena<P> arena = tableau.getArena();
+    int id = disjunction.getFormulaId();
+    int n = arena.getChildCount(id);
+
+    int[] order = new int[n];
+    double[] weights = new double[n];
+    for(int i = 0; i < n; i++) {
+      // insertion sort, disjunctions are short
+      double weight = getWeight(disjunction.getWorld(), arena.getChild(id, i));
+      int j = i;
+      while(j > 0 && weights[j - 1] < weight) {
+        order[j] = order[j - 1];
+        weights[j] = weights[j - 1];
+        j--;
+      }
+      order[j] = i;
+      weights[j] = weight;
+    }
+
+    List<Formula<P>> disjuncts = new ArrayList<Formula<P>>(n);
+    for(int i : order)
+      disjuncts.add(arena.getFormula(arena.getChild(id, i)));
+    return disjuncts.iterator();
+  }
+
+  @Override
+  public void opened(LabelledFormula<P> disjunction) {
+    Occurrences o = occurrences.get(disjunction.getWorld());
+    if(o == null) {
+      o = new Occurrences();
+      occurrences.put(disjunction.getWorld(), o);
+    }
+    update(o, disjunction.getFormulaId(), 1);
+  }
+
+  @Override
+  public void closed(LabelledFormula<P> disjunction) {
+    Occurrences o = occurrences.get(disjunction.getWorld());
+    if(o == null)
+      return;
+    update(o, disjunction.getFormulaId(), -1);
+    if(o.open == 0)
+      occurrences.remove(disjunction.getWorld());
+  }
+
+  @Override
+  public void clear() {
+    occurrences.clear();
+  }
+
+  @Override
+  public Heuristics<P> create(Tableau<P> tableau) {
+    return new OccurrenceHeuristics<P>(tableau, weighting);
+  }
+
+  /**
+   * Helper method to count the disjuncts of a disjunction.
+   *
+   * @param o the occurrences of the world
+   * @param id the id of the disjunction
+   * @param delta 1 if the disjunction was opened, -1 if it was closed
+   */
+  private void update(Occurrences o, int id, int delta) {
+    FormulaArena<P> arena = tableau.getArena();
+    int size = arena.getChildCount(id);
+    o.open += delta;
+    o.ensureSize(size);
+    o.disjunctions[size] += delta;
+    for(int i = 0; i < size; i++)
+      o.add(size, arena.getCanonical(arena.getChild(id, i)), delta);
+  }
+
+  /**
+   * Occurrences of subformulas in the open disjunctions of a world, indexed by
+   * the size of the disjunctions and the canonical id of the subformulas.
+   */
+  private static class Occurrences {
+    int open = 0;
+    int[] disjunctions = new int[0];
+    int[][] counts = new int[0][];
+
+    void ensureSize(int size) {
+      if(size >= disjunctions.length) {
+        disjunctions = Arrays.copyOf(disjunctions, size + 1);
+        counts = Arrays.copyOf(counts, size + 1);
+      }
+    }
+
+    void add(int size, int c, int delta) {
+      int[] count = counts[size];
+      if(count == null || c >= count.length) {
+        count = (count == null) ? new int[c + 1] : Arrays.copyOf(count, Math.max(c + 1, 2 * count.length));
+        counts[size] = count;
+      }
+      count[c] += delta;
+    }
+
+    int count(int size, int c) {
+      int[] count = counts[size];
+      return (count == null || c >= count.length) ? 0 : count[c];
+    }
+  }
+}
@@ -0,0 +1,239 @@
+/* Copyright (c) 2010, Johannes Köster <johannes.koester@tu-dortmund.de>
+ * All rights reserved.
+ *
+ * This software is open-source under the BSD license; see "license.txt"
+ * for a description.
+ */
+
+package modalLogic.tableau;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import modalLogic.formula.Formula;
+
+/**
+ * Or-parallel proof search on a fork/join pool. A tableau splits the search at
+ * a disjunction that does not depend on any choice when workers of the pool
+ * are idle. Each of the other disjuncts is handed over to a clone of the
+ * tableau as a fork/join task, which idle workers steal. The tableau for the
+ * i-th disjunct also gets the complements of the preceding disjuncts, so that
+ * the tableaux search disjoint parts of the search space.
+ * <p>
+ * The formula is satisfiable as soon as one of the tableaux finds an open
+ * branch, the others stop at their next disjunction. It is unsatisfiable if
+ * all of them close. Splits are limited by a maximum depth, i.e. the number of
+ * nested splits, and by a granularity, i.e. the number of disjunctions a
+ * tableau has to expand by itself between two splits.
+ *
+ * @author Johannes Köster <johannes.koester@tu-dortmund.de>
+ */
+public class OrParallelTableau<P> {
+  private ForkJoinPool pool;
+  private Tableau<P> configuration;
+  private Formula<P> formula;
+  private int maxSplitDepth = 8;
+  private int granularity = 16;
+  private AtomicReference<Tableau<P>> model = new AtomicReference<Tableau<P>>();
+  private AtomicInteger splits = new AtomicInteger();
+  private TableauState state = TableauState.NOTINITIALIZED;
+
+  /**
+   * Constructor of class OrParallelTableau.
+   *
+   * @param pool the pool the tableaux are run on
+   * @param configuration a tableau serving as prototype for all tableaux
+   */
+  public OrParallelTableau(ForkJoinPool pool, Tableau<P> configuration) {
+    this.pool = pool;
+    this.configuration = configuration;
+  }
+
+  /**
+   * Returns the maximum number of nested splits.
+   *
+   * @return the maximum split depth
+   */
+  public int getMaxSplitDepth() {
+    return maxSplitDepth;
+  }
+
+  /**
+   * Sets the maximum number of nested splits. A depth of 0 disables splitting.
+   *
+   * @param maxSplitDepth the maximum split depth
+   */
+  public void setMaxSplitDepth(int maxSplitDepth) {
+    this.maxSplitDepth = maxSplitDepth;
+  }
+
+  /**
+   * Returns the number of disjunctions a tableau expands between two splits.
+   *
+   * @return the granularity
+   */
+  public int getGranularity() {
+    return granularity;
+  }
+
+  /**
+   * Sets the number of disjunctions a tableau expands between two splits.
+   * Every split clones the tableau, so a coarse granularity pays off for
+   * large tableaux.
+   *
+   * @param granularity the granularity
+   */
+  public void setGranularity(int granularity) {
+    this.granularity = granularity;
+  }
+
+  /**
+   * Set a formula to be prooven.
+   *
+   * @param formula the formula in negation normal form
+   */
+  public void setFormula(Formula<P> formula) {
+    this.formula = formula;
+    model.set(null);
+    state = TableauState.NOTINITIALIZED;
+  }
+
+  /**
+   * Search for a proof on the pool.
+   *
+   * @return true if proof succesful
+   */
+  public boolean proofSearch() {
+    model.set(null);
+    splits.set(0);
+    Tableau<P> t = configuration.create();
+    t.setFormula(formula.clone());
+    pool.invoke(new SearchTask(t, 0));
+    state = (model.get() != null) ? TableauState.SATISFIABLE : TableauState.UNSATISFIABLE;
+    return state == TableauState.SATISFIABLE;
+  }
+
+  /**
+   * Returns the tableau that found an open branch in the last proof search.
+   *
+   * @return the tableau or null if the formula is not satisfiable
+   */
+  public Tableau<P> getModel() {
+    return model.get();
+  }
+
+  /**
+   * Returns the number of splits of the last proof search.
+   *
+   * @return the number of splits
+   */
+  public int getSplitCount() {
+    return splits.get();
+  }
+
+  /**
+   * Returns the state of the last proof search.
+   *
+   * @return the state
+   */
+  public TableauState getState() {
+    return state;
+  }
+
+  /**
+   * The proof search of one tableau, splitting it when there is demand for
+   * work.
+   */
+  private class SearchTask extends RecursiveTask<Tableau<P>> implements Splitter<P> {
+    private static final long serialVersionUID = 1L;
+    private Tableau<P> tableau;
+    private int depth;
+    private int expansions = 0;
+    private List<SearchTask> forked = new ArrayList<SearchTask>();
+
+    SearchTask(Tableau<P> tableau, int depth) {
+      this.tableau = tableau;
+      this.depth = depth;
+    }
+
+    @Override
+    protected Tableau<P> compute() {
+      if(model.get() != null)
+        return null;
+      tableau.setSplitter(this);
+      try {
+        if(tableau.proofSearch())
+          model.compareAndSet(null, tableau);
+      }
+      catch(CancellationException e) {
+        // another tableau found an open branch
+      }
+      tableau.setSplitter(null);
+
+      Tableau<P> result = (model.get() == tableau) ? tableau : null;
+      for(SearchTask task : forked) {
+        Tableau<P> r = task.join();
+        if(result == null)
+          result = r;
+      }
+      return result;
+    }
+
+    @Override
+    public boolean split(LabelledFormula<P> disjunction) {
+      if(model.get() != null)
+        throw new CancellationException("An open branch was found.");
+      if(++expansions < granularity || depth >= maxSplitDepth
+              || getSurplusQueuedTaskCount() > 0 || !canSplit(disjunction))
+        return false;
+
+      int n = tableau.getArena().getChildCount(disjunction.getFormulaId());
+      for(int i = n - 1; i > 0; i--) {
+        Map<LabelledFormula<P>, LabelledFormula<P>> labelledFormulaMap =
+                new HashMap<LabelledFormula<P>, LabelledFormula<P>>();
+        Tableau<P> clone = tableau.clone(labelledFormulaMap);
+        clone.assertDisjunct(labelledFormulaMap.get(disjunction), i);
+        SearchTask task = new SearchTask(clone, depth + 1);
+        forked.add(task);
+        task.fork();
+      }
+      tableau.assertDisjunct(disjunction, 0);
+      depth++;
+      expansions = 0;
+      splits.incrementAndGet();
+      return true;
+    }
+
+    /**
+     * Helper method to check if the disjuncts of a disjunction partition the
+     * search, i.e. the disjunction does not depend on a choice, and neither
+     * its disjuncts nor their complements are labelled in its world yet.
+     *
+     * @param disjunction the disjunction
+     * @return true if the search can be split at the disjunction
+     */
+    private boolean canSplit(LabelledFormula<P> disjunction) {
+      if(!disjunction.getDependencies().isEmpty() || !tableau.getPreBlocked().isEmpty())
+        return false;
+      FormulaArena<P> arena = tableau.getArena();
+      World<P> w = disjunction.getWorld();
+      int id = disjunction.getFormulaId();
+      if(arena.getChildCount(id) < 2)
+        return false;
+      for(int i = 0; i < arena.getChildCount(id); i++) {
+        int c = arena.getChild(id, i);
+        if(tableau.getLabelledFormula(w, c) != null)
+          return false;
+        if(arena.hasComplement(c) && tableau.getLabelledFormula(w, arena.getComplement(c)) != null)
+          return false;
+      }
+      return true;
+    }
+  }
+}
@@ -0,0 +1,182 @@
+/* Copyright (c) 2010, Johannes Köster <johannes.koester@tu-dortmund.de>
+ * All rights reserved.
+ *
+ * This software is open-source under the BSD license; see "license.txt"
+ * for a description.
+ */
+
+package modalLogic.tableau;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import modalLogic.formula.Formula;
+
+/**
+ * Portfolio of differently configured tableaux that search for a proof of the
+ * same formula concurrently. The first tableau to finish its proof search
+ * decides the result, the others are cancelled by interrupting them. Each
+ * tableau works on its own copy of the formula.
+ * <p>
+ * Configurations are tableaux that serve as prototypes, every proof search
+ * runs on new tableaux created from them (see Tableau.create()).
+ *
+ * @author Johannes Köster <johannes.koester@tu-dortmund.de>
+ */
+public class PortfolioTableau<P> {
+  private ExecutorService executor;
+  private List<Tableau<P>> configurations = new ArrayList<Tableau<P>>();
+  private Formula<P> formula;
+  private Tableau<P> winner;
+
+  /**
+   * Constructor of class PortfolioTableau.
+   *
+   * @param executor the executor the tableaux are run on
+   */
+  public PortfolioTableau(ExecutorService executor) {
+    this.executor = executor;
+  }
+
+  /**
+   * Add a configuration.
+   *
+   * @param configuration a tableau serving as prototype
+   */
+  public void addConfiguration(Tableau<P> configuration) {
+    configurations.add(configuration);
+  }
+
+  /**
+   * Add configurations derived from a prototype. The first one equals the
+   * prototype, the others vary heuristics, random seeds, laziness, expansion
+   * order and restart policy.
+   *
+   * @param prototype the prototype
+   * @param n the number of configurations
+   */
+  public void addConfigurations(Tableau<P> prototype, int n) {
+    for(int i = 0; i < n; i++) {
+      Tableau<P> t = prototype.create();
+      switch(i % 4) {
+        case 1:
+          t.setLazy(!t.isLazy());
+          t.setRestartPolicy(new LubyRestarts());
+          break;
+        case 2:
+          t.setScheduler(new LifoScheduler<P>());
+          t.setRestartPolicy(new GeometricRestarts());
+          break;
+        case 3:
+          t.setLazy(!t.isLazy());
+          break;
+      }
+      if(i == 1)
+        t.setHeuristics(new OccurrenceHeuristics<P>(t, OccurrenceHeuristics.JEROSLOW_WANG));
+      else if(i == 3)
+        t.setHeuristics(new OccurrenceHeuristics<P>(t, OccurrenceHeuristics.MOMS));
+      else if(i > 0)
+        t.setHeuristics(new ActivityHeuristics<P>(t, 0.95, i));
+      addConfiguration(t);
+    }
+  }
+
+  /**
+   * Returns the configurations.
+   *
+   * @return the configurations
+   */
+  public List<Tableau<P>> getConfigurations() {
+    return Collections.unmodifiableList(configurations);
+  }
+
+  /**
+   * Set a formula to be prooven.
+   *
+   * @param formula the formula in negation normal form
+   */
+  public void setFormula(Formula<P> formula) {
+    this.formula = formula;
+    winner = null;
+  }
+
+  /**
+   * Search for a proof with all configurations concurrently. Tableaux that
+   * fail with an exception are ignored as long as another one finishes.
+   *
+   * @return true if proof succesful
+   * @throws CancellationException if the thread was interrupted
+   * @throws IllegalStateException if all tableaux failed
+   */
+  public boolean proofSearch() {
+    if(configurations.isEmpty())
+      throw new IllegalStateException("No configuration was added.");
+
+    CompletionService<Tableau<P>> completion = new ExecutorCompletionService<Tableau<P>>(executor);
+    List<Future<Tableau<P>>> futures = new ArrayList<Future<Tableau<P>>>(configurations.size());
+    winner = null;
+    Throwable failure = null;
+    try {
+      for(Tableau<P> configuration : configurations) {
+        // the formula is copied before the tableaux run concurrently
+        final Tableau<P> t = configuration.create();
+        t.setFormula(formula.clone());
+        futures.add(completion.submit(new Callable<Tableau<P>>() {
+          @Override
+          public Tableau<P> call() {
+            t.proofSearch();
+            return t;
+          }
+        }));
+      }
+
+      for(int i = 0; i < futures.size() && winner == null; i++) {
+        try {
+          winner = completion.take().get();
+        }
+        catch(ExecutionException e) {
+          if(failure == null)
+            failure = e.getCause();
+        }
+      }
+    }
+    catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CancellationException("The proof search was interrupted.");
+    }
+    finally {
+      // cancel the other tableaux, they stop at their next interrupt check
+      for(Future<Tableau<P>> future : futures)
+        future.cancel(true);
+    }
+
+    if(winner == null)
+      throw new IllegalStateException("All configurations failed.", failure);
+    return winner.getState() == TableauState.SATISFIABLE;
+  }
+
+  /**
+   * Returns the tableau that finished the last proof search first.
+   *
+   * @return the tableau or null if there was no proof search yet
+   */
+  public Tableau<P> getWinner() {
+    return winner;
+  }
+
+  /**
+   * Returns the state of the last proof search.
+   *
+   * @return the state
+   */
+  public TableauState getState() {
+    return (winner == null) ? TableauState.NOTINITIALIZED : winner.getState();
+  }
+}
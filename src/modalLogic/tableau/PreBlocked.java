@@ -7,6 +7,7 @@
 
 package modalLogic.tableau;
 
+import java.util.Map;
 import modalLogic.formula.Formula;
 import org.apache.commons.collections15.MultiMap;
 import org.apache.commons.collections15.multimap.MultiHashMap;
@@ -17,7 +18,7 @@ import org.apache.commons.collections15.multimap.MultiHashMap;
  * @author Johannes Köster <johannes.koester@tu-dortmund.de>
  */
 public class PreBlocked<P> {
-  private MultiMap<World, Formula<P>> map = new MultiHashMap<World, Formula<P>>();
+  private MultiMap<World<P>, Formula<P>> map = new MultiHashMap<World<P>, Formula<P>>();
 
   /**
    * Select a subformula to be blocked.
@@ -25,7 +26,7 @@ public class PreBlocked<P> {
    * @param w the world
    * @param f the subformula
    */
-  public void addBlock(World w, Formula<P> f) {
+  public void addBlock(World<P> w, Formula<P> f) {
     map.put(w, f);
   }
 
@@ -35,7 +36,7 @@ public class PreBlocked<P> {
    * @param w the world
    * @param f the subformula
    */
-  public void removeBlock(World w, Formula<P> f) {
+  public void removeBlock(World<P> w, Formula<P> f) {
     map.remove(w, f);
   }
 
@@ -46,10 +47,36 @@ public class PreBlocked<P> {
    * @param f the subformula
    * @return true if the subformula was defined to be blocked
    */
-  public boolean isBlocked(World w, Formula<P> f) {
+  public boolean isBlocked(World<P> w, Formula<P> f) {
     if(map.containsKey(w)) {
       return map.get(w).contains(f);
     }
     return false;
   }
+
+  /**
+   * Replace blocked subformulas by other formula objects, e.g. by the clones
+   * of a formula.
+   *
+   * @param formulaMap the subformulas and their replacements
+   */
+  void replace(Map<Formula<P>, Formula<P>> formulaMap) {
+    MultiMap<World<P>, Formula<P>> replaced = new MultiHashMap<World<P>, Formula<P>>();
+    for(World<P> w : map.keySet()) {
+      for(Formula<P> f : map.get(w)) {
+        Formula<P> g = formulaMap.get(f);
+        replaced.put(w, (g == null) ? f : g);
+      }
+    }
+    map = replaced;
+  }
+
+  /**
+   * Returns true if no subformula was defined to be blocked.
+   *
+   * @return true if nothing is blocked
+   */
+  public boolean isEmpty() {
+    return map.isEmpty();
+  }
 }
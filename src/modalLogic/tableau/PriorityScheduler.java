@@ -0,0 +1,102 @@
+/* Copyright (c) 2010, Johannes Köster <johannes.koester@tu-dortmund.de>
+ * All rights reserved.
+ *
+ * This software is open-source under the BSD license; see "license.txt"
+ * for a description.
+ */
+
+package modalLogic.tableau;
+
+import java.util.ArrayList;
+import java.util.List;
+import modalLogic.formula.Formula;
+
+/**
+ * Scheduler with one queue per formula type. Subformulas of a type are only
+ * expanded when all queues of the preceding types are empty, within a queue
+ * the latest subformula is expanded first. The default order expands literals,
+ * then conjunctions, necessity, disjunctions and finally possibility
+ * subformulas, so that clashes are found before branching and creating worlds.
+ *
+ * @author Johannes Köster <johannes.koester@tu-dortmund.de>
+ */
+public class PriorityScheduler<P> implements Scheduler<P> {
+  /**
+   * The default order of formula types.
+   */
+  public static final short[] DEFAULT_ORDER = {Formula.CONSTANT, Formula.LITERAL,
+    Formula.CONJUNCTION, Formula.NECESSITY, Formula.DISJUNCTION, Formula.POSSIBILITY};
+
+  private short[] order;
+  private int[] priority;
+  private ArrayList<ArrayList<LabelledFormula<P>>> queues;
+  private int first = 0;
+
+  /**
+   * Constructor of class PriorityScheduler using the default order.
+   */
+  public PriorityScheduler() {
+    this(DEFAULT_ORDER);
+  }
+
+  /**
+   * Constructor of class PriorityScheduler. Types that are not given are
+   * expanded last.
+   *
+   * @param order the formula types in the order of expansion
+   */
+  public PriorityScheduler(short... order) {
+    this.order = order.clone();
+    int max = 0;
+    for(short type : order)
+      max = Math.max(max, type);
+    priority = new int[max + 1];
+    for(int i = 0; i < priority.length; i++)
+      priority[i] = order.length;
+    for(int i = 0; i < order.length; i++)
+      priority[order[i]] = i;
+
+    queues = new ArrayList<ArrayList<LabelledFormula<P>>>(order.length + 1);
+    for(int i = 0; i <= order.length; i++)
+      queues.add(new ArrayList<LabelledFormula<P>>());
+    first = queues.size();
+  }
+
+  @Override
+  public void add(LabelledFormula<P> lf) {
+    short type = lf.getType();
+    int p = (type < priority.length) ? priority[type] : order.length;
+    queues.get(p).add(lf);
+    first = Math.min(first, p);
+  }
+
+  @Override
+  public LabelledFormula<P> poll() {
+    for(; first < queues.size(); first++) {
+      ArrayList<LabelledFormula<P>> queue = queues.get(first);
+      if(!queue.isEmpty())
+        return queue.remove(queue.size() - 1);
+    }
+    return null;
+  }
+
+  @Override
+  public List<LabelledFormula<P>> getScheduled() {
+    List<LabelledFormula<P>> scheduled = new ArrayList<LabelledFormula<P>>();
+    for(ArrayList<LabelledFormula<P>> queue : queues)
+      scheduled.addAll(queue);
+    return scheduled;
+  }
+
+  @Override
+  public void clear() {
+    for(ArrayList<LabelledFormula<P>> queue : queues)
+      queue.clear();
+    first = queues.size();
+  }
+
+  @Override
+  public Scheduler<P> create() {
+    return new PriorityScheduler<P>(order);
+  }
+}
@@ -0,0 +1,126 @@
+/* Copyright (c) 2010, Johannes Köster <johannes.koester@tu-dortmund.de>
+ * All rights reserved.
+ *
+ * This software is open-source under the BSD license; see "license.txt"
+ * for a description.
+ */
+
+package modalLogic.tableau;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import modalLogic.tableau.comparators.EqualsComparator;
+import modalLogic.tableau.comparators.PointerComparator;
+
+/**
+ * Maps propositions to dense int ids. Two propositions get the same id if the
+ * proposition comparator considers them equal.
+ *
+ * @author Johannes Köster <johannes.koester@tu-dortmund.de>
+ */
+public class PropositionInterner<P> {
+  private List<P> propositions = new ArrayList<P>();
+  private Map<P, Integer> ids;
+  private Comparator<P> propositionComparator;
+
+  /**
+   * Constructor of class PropositionInterner.
+   *
+   * @param propositionComparator the proposition comparator
+   */
+  public PropositionInterner(Comparator<P> propositionComparator) {
+    this.propositionComparator = propositionComparator;
+    // the known comparators can be backed by a hash map, others are scanned
+    if(propositionComparator instanceof EqualsComparator)
+      ids = new HashMap<P, Integer>();
+    else if(propositionComparator instanceof PointerComparator)
+      ids = new IdentityHashMap<P, Integer>();
+  }
+
+  /**
+   * Returns the id of a proposition, assigning a new one if necessary.
+   *
+   * @param p the proposition
+   * @return the id
+   */
+  public int intern(P p) {
+    if(ids != null) {
+      Integer id = ids.get(p);
+      if(id == null) {
+        id = propositions.size();
+        ids.put(p, id);
+        propositions.add(p);
+      }
+      return id;
+    }
+    for(int i = 0; i < propositions.size(); i++) {
+      if(propositionComparator.compare(p, propositions.get(i)) == 0)
+        return i;
+    }
+    propositions.add(p);
+    return propositions.size() - 1;
+  }
+
+  /**
+   * Returns the id of a proposition without assigning a new one.
+   *
+   * @param p the proposition
+   * @return the id or -1 if the proposition is not interned
+   */
+  public int getId(P p) {
+    if(ids != null) {
+      Integer id = ids.get(p);
+      return (id == null) ? -1 : id;
+    }
+    for(int i = 0; i < propositions.size(); i++) {
+      if(propositionComparator.compare(p, propositions.get(i)) == 0)
+        return i;
+    }
+    return -1;
+  }
+
+  /**
+   * Returns the proposition with a given id.
+   *
+   * @param id the id
+   * @return the proposition
+   */
+  public P get(int id) {
+    return propositions.get(id);
+  }
+
+  /**
+   * Returns the number of interned propositions.
+   *
+   * @return the number of interned propositions
+   */
+  public int size() {
+    return propositions.size();
+  }
+
+  /**
+   * Returns a copy of the interner.
+   *
+   * @return the copy
+   */
+  public PropositionInterner<P> copy() {
+    PropositionInterner<P> copy = new PropositionInterner<P>(propositionComparator);
+    copy.propositions.addAll(propositions);
+    if(ids != null)
+      copy.ids.putAll(ids);
+    return copy;
+  }
+
+  /**
+   * Forget all interned propositions.
+   */
+  public void clear() {
+    propositions.clear();
+    if(ids != null)
+      ids.clear();
+  }
+}
@@ -0,0 +1,40 @@
+/* Copyright (c) 2010, Johannes Köster <johannes.koester@tu-dortmund.de>
+ * All rights reserved.
+ *
+ * This software is open-source under the BSD license; see "license.txt"
+ * for a description.
+ */
+
+package modalLogic.tableau;
+
+/**
+ * Provides interface of replacable restart policies. A restart policy decides
+ * after how many backtracks the tableau retracts all choices and starts the
+ * search again from the root, keeping the learned nogoods and the scores of
+ * the heuristics.
+ *
+ * @author Johannes Köster <johannes.koester@tu-dortmund.de>
+ */
+public interface RestartPolicy {
+
+  /**
+   * Returns the number of backtracks until the next restart.
+   *
+   * @return the number of backtracks or a negative value if there is no
+   * further restart
+   */
+  public int nextInterval();
+
+  /**
+   * Start the sequence of intervals again.
+   */
+  public void reset();
+
+  /**
+   * Create a restart policy of the same kind and configuration at the start of
+   * its sequence.
+   *
+   * @return the new restart policy
+   */
+  public RestartPolicy create();
+}
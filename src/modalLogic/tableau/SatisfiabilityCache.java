@@ -0,0 +1,659 @@
+/* Copyright (c) 2010, Johannes Köster <johannes.koester@tu-dortmund.de>
+ * All rights reserved.
+ *
+ * This software is open-source under the BSD license; see "license.txt"
+ * for a description.
+ */
+
+package modalLogic.tableau;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import modalLogic.formula.Formula;
+import modalLogic.formula.FormulaImpl;
+
+/**
+ * Cache of the satisfiability of worlds. In modal logic K, the satisfiability
+ * of a world created by a possibility subformula only depends on its label
+ * set, i.e. the child of the possibility subformula and the children of the
+ * necessity subformulas of the preceding world. Label sets are identified by
+ * the sorted canonical ids of these formulas.
+ * <p>
+ * Label sets of the worlds of a satisfiable branch are cached as satisfiable.
+ * A possibility subformula with such a label set creates no world, until a
+ * new necessity subformula is added to its world. Label sets refuted
+ * independently of the choices made in and below their world are cached as
+ * unsatisfiable, together with the decision levels of the refutation. A
+ * possibility subformula with such a label set leads to a clash, unless the
+ * clash would depend on other decision levels. The cache is bounded, when it
+ * is full the least recently used entry is evicted.
+ * <p>
+ * With an executor, label sets that are not cached are decided by separate
+ * tableaux running on the executor, if they are large enough to outweigh the
+ * cost of a separate tableau. When a possibility subformula with such a label
+ * set is expanded, the label sets of the other scheduled possibility
+ * subformulas of its world are submitted, too, so that the successor worlds
+ * are decided in parallel while the tableau waits for the first of them.
+ * Only label sets with at least {@link #getMinimumSize()} subformulas, 64 by
+ * default, are decided on the executor. Below that, creating and copying a
+ * separate tableau costs about as much as expanding the world in the tableau
+ * itself.
+ *
+ * @author Johannes Köster <johannes.koester@tu-dortmund.de>
+ */
+public class SatisfiabilityCache<P> {
+  // milliseconds between two checks of the budget while waiting for the executor
+  private static final long WAIT_INTERVAL = 10;
+
+  private Tableau<P> tableau;
+  private int capacity = 4096;
+  private Map<LabelSet, Decision> cache = new LinkedHashMap<LabelSet, Decision>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<LabelSet, Decision> eldest) {
+      return size() > capacity;
+    }
+  };
+  // possibility subformulas that were closed by the cache, indexed by their world
+  private Map<World<P>, List<LabelledFormula<P>>> closed =
+          new IdentityHashMap<World<P>, List<LabelledFormula<P>>>();
+  private ExecutorService executor;
+  private int minimumSize = 64;
+  private Map<LabelSet, Future<Boolean>> running = new HashMap<LabelSet, Future<Boolean>>();
+  private boolean stopped = false;
+
+  /**
+   * Constructor of class SatisfiabilityCache.
+   *
+   * @param tableau the tableau
+   */
+  public SatisfiabilityCache(Tableau<P> tableau) {
+    this.tableau = tableau;
+  }
+
+  /**
+   * Returns the maximum number of cached label sets.
+   *
+   * @return the capacity
+   */
+  public int getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * Sets the maximum number of cached label sets. A capacity of 0 disables
+   * the cache.
+   *
+   * @param capacity the capacity
+   */
+  public void setCapacity(int capacity) {
+    this.capacity = capacity;
+    if(capacity == 0)
+      cache.clear();
+    else
+      while(cache.size() > capacity)
+        cache.remove(cache.keySet().iterator().next());
+  }
+
+  /**
+   * Returns the executor label sets are decided on.
+   *
+   * @return the executor or null
+   */
+  public ExecutorService getExecutor() {
+    return executor;
+  }
+
+  /**
+   * Sets an executor to decide unknown label sets on, null disables this. The
+   * executor is not passed to the tableaux deciding the label sets, nor to
+   * other tableaux created from this one (see Tableau.create()), so that no
+   * task of the executor waits for another one.
+   *
+   * @param executor the executor or null
+   */
+  public void setExecutor(ExecutorService executor) {
+    cancel();
+    this.executor = executor;
+  }
+
+  /**
+   * Returns the minimum number of subformulas of a label set decided on the
+   * executor.
+   *
+   * @return the minimum size
+   */
+  public int getMinimumSize() {
+    return minimumSize;
+  }
+
+  /**
+   * Sets the minimum number of subformulas of a label set decided on the
+   * executor. Smaller label sets are decided faster in the tableau itself.
+   *
+   * @param minimumSize the minimum size
+   */
+  public void setMinimumSize(int minimumSize) {
+    this.minimumSize = minimumSize;
+  }
+
+  /**
+   * Returns the number of cached label sets.
+   *
+   * @return the number of cached label sets
+   */
+  public int size() {
+    return cache.size();
+  }
+
+  /**
+   * Forget all cached label sets.
+   */
+  public void clear() {
+    cache.clear();
+    closed.clear();
+    cancel();
+  }
+
+  /**
+   * Cancel the tableaux deciding label sets that were not needed so far.
+   */
+  public void cancel() {
+    for(Future<Boolean> future : running.values())
+      future.cancel(true);
+    running.clear();
+    stopped = false;
+  }
+
+  /**
+   * Returns true if waiting for the executor was stopped by the budget of the
+   * proof search or by an interruption of the thread. The possibility
+   * subformula that waited is scheduled again, and the proof search has to
+   * stop with state UNKNOWN.
+   *
+   * @return true if stopped
+   */
+  public boolean isStopped() {
+    return stopped;
+  }
+
+  /**
+   * Expand a possibility subformula by the cache if the label set of the world
+   * it would create is known to be satisfiable, or known to be unsatisfiable
+   * by a refutation that depends on all the decision levels of the clash.
+   *
+   * @param f the possibility subformula
+   * @return true if the subformula was expanded
+   */
+  public boolean expand(LabelledFormula<P> f) {
+    if(cache.isEmpty() && executor == null)
+      return false;
+    World<P> w0 = f.getWorld();
+    LabelSet labels = labels(w0, tableau.getArena().getChild(f.getFormulaId(), 0));
+    Decision decision = cache.get(labels);
+    if(decision == null && executor != null && isLarge(labels))
+      decision = decide(f, labels);
+    if(decision == null)
+      return false;
+    if(decision.status == Status.STOPPED) {
+      tableau.getBranch().unexpand(f);
+      return true;
+    }
+
+    if(decision.status == Status.SATISFIABLE) {
+      List<LabelledFormula<P>> diamonds = closed.get(w0);
+      if(diamonds == null) {
+        diamonds = new ArrayList<LabelledFormula<P>>(2);
+        closed.put(w0, diamonds);
+      }
+      diamonds.add(f);
+    }
+    else {
+      // the possibility subformula and the necessity subformulas clash
+      FormulaArena<P> arena = tableau.getArena();
+      LabelledFormula<P>[] reasons = newArray(w0.getBoxFormulaCount() + 1);
+      reasons[0] = f;
+      BitSet dependencies = (BitSet) f.getDependencies().clone();
+      for(int i = 0; i < w0.getBoxFormulaCount(); i++) {
+        reasons[i + 1] = tableau.getLabelledFormula(w0, arena.getParent(w0.getBoxFormula(i)));
+        dependencies.or(reasons[i + 1].getDependencies());
+      }
+      // a clash that depends on more choices than the refutation would make
+      // backtracking less precise than expanding the world
+      if(decision.levels != null) {
+        dependencies.andNot(decision.levels);
+        if(!dependencies.isEmpty())
+          return false;
+      }
+      LabelledFormula<P> falsum = tableau.getLabelledFormula(w0, arena.getFalsum());
+      if(falsum == null)
+        falsum = tableau.label(w0, arena.getFalsum());
+      // the possibility subformula is expanded again when falsum is undone
+      falsum.propagatedFrom = f;
+      tableau.addToBranch(falsum, reasons);
+      falsum.setState(FormulaState.ACTIVE);
+    }
+    return true;
+  }
+
+  /**
+   * Expand the possibility subformulas of a world that were closed by the
+   * cache again, because a necessity subformula was added to the world.
+   *
+   * @param w the world
+   */
+  public void reopen(World<P> w) {
+    List<LabelledFormula<P>> diamonds = closed.remove(w);
+    if(diamonds == null)
+      return;
+    for(LabelledFormula<P> f : diamonds) {
+      if(isClosed(f)) {
+        f.setExpanded(false);
+        tableau.getBranch().unexpand(f);
+      }
+    }
+  }
+
+  /**
+   * Returns the possibility subformulas of the branch that are closed by the
+   * cache, i.e. that did not create a world. Each is mapped to a world of the
+   * branch with the same label set, or to null if there is none.
+   *
+   * @return the closed possibility subformulas and their witnesses
+   */
+  Map<LabelledFormula<P>, World<P>> getClosed() {
+    Map<LabelledFormula<P>, World<P>> witnesses = new LinkedHashMap<LabelledFormula<P>, World<P>>();
+    if(closed.isEmpty())
+      return witnesses;
+    FormulaArena<P> arena = tableau.getArena();
+    Map<LabelSet, World<P>> worlds = new HashMap<LabelSet, World<P>>();
+    for(World<P> w : tableau.getWorlds()) {
+      LabelledFormula<P> reason = w.getReason();
+      if(reason != null) {
+        LabelSet labels = labels(reason.getWorld(), arena.getChild(reason.getFormulaId(), 0));
+        if(!worlds.containsKey(labels))
+          worlds.put(labels, w);
+      }
+    }
+    for(List<LabelledFormula<P>> diamonds : closed.values()) {
+      for(LabelledFormula<P> f : diamonds) {
+        if(isClosed(f))
+          witnesses.put(f, worlds.get(labels(f.getWorld(), arena.getChild(f.getFormulaId(), 0))));
+      }
+    }
+    return witnesses;
+  }
+
+  /**
+   * Create a tableau for the label set of the world a possibility subformula
+   * would create. The formulas are copied, so that the tableau shares nothing
+   * with this tableau.
+   *
+   * @param f the possibility subformula
+   * @return the tableau
+   */
+  Tableau<P> create(LabelledFormula<P> f) {
+    return create(labels(f.getWorld(), tableau.getArena().getChild(f.getFormulaId(), 0)));
+  }
+
+  /**
+   * Cache the label sets of all worlds of the current branch as satisfiable.
+   * The branch has to be open and fully expanded.
+   */
+  public void satisfiable() {
+    if(capacity == 0 || !tableau.getPreBlocked().isEmpty())
+      return;
+    for(World<P> w : tableau.getWorlds()) {
+      LabelledFormula<P> reason = w.getReason();
+      if(reason != null)
+        cache.put(labels(reason.getWorld(), tableau.getArena().getChild(reason.getFormulaId(), 0)), Decision.SATISFIABLE);
+    }
+  }
+
+  /**
+   * Cache the label sets of the worlds above a clash as unsatisfiable, if the
+   * clash does not depend on a choice made in or below them. Only refutations
+   * that needed choices below the world are cached, others are repeated faster
+   * by expansion, with more precise dependencies.
+   *
+   * @param w the world of the clash
+   * @param levels the decision levels the clash depends on
+   */
+  public void refuted(World<P> w, BitSet levels) {
+    if(capacity == 0 || !tableau.getPreBlocked().isEmpty())
+      return;
+    Set<World<P>> choices = null;
+    for(World<P> u = w; u.getReason() != null; u = u.getReason().getWorld()) {
+      // both conditions also fail for all preceding worlds
+      if(!isIndependent(u, levels) || !isLocal(u))
+        return;
+      if(choices == null) {
+        choices = Collections.newSetFromMap(new IdentityHashMap<World<P>, Boolean>());
+        for(LabelledFormula<P> disjunction : tableau.getDisjunctions())
+          choices.add(disjunction.getWorld());
+      }
+      if(hasChoices(u, choices)) {
+        LabelledFormula<P> reason = u.getReason();
+        cache.put(labels(reason.getWorld(), tableau.getArena().getChild(reason.getFormulaId(), 0)),
+                new Decision(Status.UNSATISFIABLE, (BitSet) levels.clone()));
+      }
+    }
+  }
+
+  /**
+   * Helper method to decide a label set on the executor. The large label sets
+   * of the other scheduled possibility subformulas of the world are submitted,
+   * too.
+   *
+   * @param f the possibility subformula
+   * @param labels its label set
+   * @return the decision, with status STOPPED if the proof search has to stop
+   */
+  private Decision decide(LabelledFormula<P> f, LabelSet labels) {
+    Future<Boolean> future = running.remove(labels);
+    if(future == null) {
+      future = submit(labels);
+      for(LabelledFormula<P> lf : tableau.getBranch().getUnexpanded()) {
+        if(lf.getType() == Formula.POSSIBILITY && lf.getWorld() == f.getWorld()) {
+          LabelSet l = labels(lf.getWorld(), tableau.getArena().getChild(lf.getFormulaId(), 0));
+          if(!l.equals(labels) && !running.containsKey(l) && !cache.containsKey(l) && isLarge(l))
+            running.put(l, submit(l));
+        }
+      }
+    }
+
+    Decision result = null;
+    while(result == null) {
+      try {
+        result = future.get(WAIT_INTERVAL, TimeUnit.MILLISECONDS) ? Decision.SATISFIABLE : Decision.REFUTED;
+      }
+      catch(TimeoutException e) {
+      }
+      catch(InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      catch(ExecutionException e) {
+        cancel();
+        throw new IllegalStateException("The proof search of a successor world failed.", e.getCause());
+      }
+      SearchBudget budget = tableau.getBudget();
+      if(result == null && ((budget != null) ? budget.isExhausted(true) : Thread.currentThread().isInterrupted())) {
+        // cancelled together with the others when the proof search stops
+        running.put(labels, future);
+        stopped = true;
+        return Decision.STOPPED;
+      }
+    }
+    if(capacity > 0)
+      cache.put(labels, result);
+    return result;
+  }
+
+  /**
+   * Helper method to check if a label set has at least the minimum size.
+   *
+   * @param labels the label set
+   * @return true if the label set is large
+   */
+  private boolean isLarge(LabelSet labels) {
+    int size = 0;
+    for(int id : labels.ids) {
+      size += size(id, minimumSize - size);
+      if(size >= minimumSize)
+        return true;
+    }
+    return false;
+  }
+
+  /**
+   * Helper method to count the subformulas of a formula, up to a limit.
+   *
+   * @param id the id of the formula
+   * @param limit the limit
+   * @return the number of subformulas or at least the limit
+   */
+  private int size(int id, int limit) {
+    FormulaArena<P> arena = tableau.getArena();
+    int size = 1;
+    for(int i = 0; i < arena.getChildCount(id) && size < limit; i++)
+      size += size(arena.getChild(id, i), limit - size);
+    return size;
+  }
+
+  /**
+   * Helper method to submit the proof search of a label set to the executor.
+   *
+   * @param labels the label set
+   * @return the future result of the proof search
+   */
+  private Future<Boolean> submit(LabelSet labels) {
+    final Tableau<P> t = create(labels);
+    return executor.submit(new Callable<Boolean>() {
+      @Override
+      public Boolean call() {
+        return t.proofSearch();
+      }
+    });
+  }
+
+  /**
+   * Helper method to create a tableau for a label set. The formulas are copied
+   * before, so that the tableau shares nothing with this tableau.
+   *
+   * @param labels the label set
+   * @return the tableau
+   */
+  private Tableau<P> create(LabelSet labels) {
+    FormulaImpl<P> conjunction = new FormulaImpl<P>(Formula.CONJUNCTION);
+    for(int id : labels.ids)
+      conjunction.addChild(tableau.getArena().getFormula(id).clone());
+    Tableau<P> t = tableau.create();
+    t.setFormula(conjunction);
+    return t;
+  }
+
+  /**
+   * Helper method to check if a possibility subformula is still closed by the
+   * cache, i.e. it is on the branch and did not create a world.
+   *
+   * @param f the possibility subformula
+   * @return true if the subformula is closed
+   */
+  private boolean isClosed(LabelledFormula<P> f) {
+    return !f.isDiscarded() && f.isExpanded() && tableau.getBranch().getTrail().contains(f) && !hasWorld(f);
+  }
+
+  /**
+   * Helper method to check if a possibility subformula created a world, i.e.
+   * it was expanded again after the cache closed it.
+   *
+   * @param f the possibility subformula
+   * @return true if the subformula created a world
+   */
+  private boolean hasWorld(LabelledFormula<P> f) {
+    for(World<P> w : tableau.getSucc(f.getWorld())) {
+      if(w.getReason() == f)
+        return true;
+    }
+    return false;
+  }
+
+  /**
+   * Copy the possibility subformulas closed by the cache to the cache of a
+   * cloned tableau. Cached label sets are not copied, because canonical ids
+   * differ between formula arenas.
+   *
+   * @param clone the cache of the cloned tableau
+   * @param worldMap the map from worlds to cloned worlds
+   * @param labelledFormulaMap the map from labelled formulas to cloned ones
+   */
+  public void cloneClosed(SatisfiabilityCache<P> clone, Map<World<P>, World<P>> worldMap,
+          Map<LabelledFormula<P>, LabelledFormula<P>> labelledFormulaMap) {
+    clone.capacity = capacity;
+    for(Map.Entry<World<P>, List<LabelledFormula<P>>> e : closed.entrySet()) {
+      World<P> w = worldMap.get(e.getKey());
+      if(w == null)
+        continue;
+      List<LabelledFormula<P>> diamonds = new ArrayList<LabelledFormula<P>>(e.getValue().size());
+      for(LabelledFormula<P> f : e.getValue()) {
+        if(labelledFormulaMap.containsKey(f))
+          diamonds.add(labelledFormulaMap.get(f));
+      }
+      clone.closed.put(w, diamonds);
+    }
+  }
+
+  /**
+   * Helper method to check if none of the given decision levels belongs to a
+   * disjunction in or below a world.
+   *
+   * @param w the world
+   * @param levels the decision levels
+   * @return true if the levels are independent of the world
+   */
+  private boolean isIndependent(World<P> w, BitSet levels) {
+    for(int level = levels.nextSetBit(0); level >= 0; level = levels.nextSetBit(level + 1)) {
+      LabelledFormula<P> disjunction = tableau.getDisjunctions().get(level);
+      if(disjunction == null)
+        return false;
+      for(World<P> v = disjunction.getWorld(); v != null; v = (v.getReason() == null) ? null : v.getReason().getWorld()) {
+        if(v == w)
+          return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Helper method to check that all subformulas in and below a world follow
+   * from its label set, i.e. no learned nogood added subformulas there.
+   *
+   * @param w the world
+   * @return true if the world and its successors are local
+   */
+  private boolean isLocal(World<P> w) {
+    if(w.hasLearnedFormulas())
+      return false;
+    for(World<P> v : tableau.getSucc(w)) {
+      if(!isLocal(v))
+        return false;
+    }
+    return true;
+  }
+
+  /**
+   * Helper method to check if a choice was made in or below a world.
+   *
+   * @param w the world
+   * @param choices the worlds with an expanded disjunction
+   * @return true if a choice was made
+   */
+  private boolean hasChoices(World<P> w, Set<World<P>> choices) {
+    if(choices.contains(w))
+      return true;
+    for(World<P> v : tableau.getSucc(w)) {
+      if(hasChoices(v, choices))
+        return true;
+    }
+    return false;
+  }
+
+  /**
+   * Helper method to compute the label set of a world that is created by a
+   * possibility subformula.
+   *
+   * @param w0 the world of the possibility subformula
+   * @param child the id of the child of the possibility subformula
+   * @return the label set
+   */
+  private LabelSet labels(World<P> w0, int child) {
+    FormulaArena<P> arena = tableau.getArena();
+    int[] ids = new int[w0.getBoxFormulaCount() + 1];
+    ids[0] = arena.getCanonical(child);
+    for(int i = 0; i < w0.getBoxFormulaCount(); i++)
+      ids[i + 1] = arena.getCanonical(w0.getBoxFormula(i));
+    Arrays.sort(ids);
+
+    // remove duplicates
+    int n = 0;
+    for(int i = 0; i < ids.length; i++) {
+      if(n == 0 || ids[n - 1] != ids[i])
+        ids[n++] = ids[i];
+    }
+    return new LabelSet(Arrays.copyOf(ids, n));
+  }
+
+  /**
+   * Helper method to create an array of labelled formulas.
+   *
+   * @param size the size
+   * @return the array
+   */
+  @SuppressWarnings("unchecked")
+  private LabelledFormula<P>[] newArray(int size) {
+    return (LabelledFormula<P>[]) new LabelledFormula<?>[size];
+  }
+
+  /**
+   * The status of a label set.
+   */
+  private enum Status {
+    SATISFIABLE, UNSATISFIABLE, STOPPED
+  }
+
+  /**
+   * The decision of a label set. The levels of an unsatisfiable label set are
+   * the decision levels of its refutation, or null if it was refuted by a
+   * separate tableau, i.e. independently of any decision level.
+   */
+  private static class Decision {
+    static final Decision SATISFIABLE = new Decision(Status.SATISFIABLE, null);
+    static final Decision REFUTED = new Decision(Status.UNSATISFIABLE, null);
+    // the decision was stopped by the budget or an interruption, never cached
+    static final Decision STOPPED = new Decision(Status.STOPPED, null);
+
+    final Status status;
+    final BitSet levels;
+
+    Decision(Status status, BitSet levels) {
+      this.status = status;
+      this.levels = levels;
+    }
+  }
+
+  /**
+   * A label set, i.e. sorted canonical ids of formulas.
+   */
+  private static class LabelSet {
+    int[] ids;
+    int hash;
+
+    LabelSet(int[] ids) {
+      this.ids = ids;
+      hash = Arrays.hashCode(ids);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof LabelSet && Arrays.equals(ids, ((LabelSet) o).ids);
+    }
+  }
+}
@@ -0,0 +1,54 @@
+/* Copyright (c) 2010, Johannes Köster <johannes.koester@tu-dortmund.de>
+ * All rights reserved.
+ *
+ * This software is open-source under the BSD license; see "license.txt"
+ * for a description.
+ */
+
+package modalLogic.tableau;
+
+import java.util.List;
+
+/**
+ * Provides interface of replacable schedulers that decide which unexpanded
+ * subformula of the branch is expanded next. Entries of subformulas that were
+ * removed from the branch in the meantime are skipped by the branch.
+ *
+ * @author Johannes Köster <johannes.koester@tu-dortmund.de>
+ */
+public interface Scheduler<P> {
+
+  /**
+   * Schedule a subformula for expansion.
+   *
+   * @param lf the subformula
+   */
+  public void add(LabelledFormula<P> lf);
+
+  /**
+   * Remove and return the subformula to expand next.
+   *
+   * @return the subformula or null if nothing is scheduled
+   */
+  public LabelledFormula<P> poll();
+
+  /**
+   * Returns all scheduled entries. Adding them to an empty scheduler of the
+   * same kind in the returned order restores the schedule.
+   *
+   * @return the scheduled entries
+   */
+  public List<LabelledFormula<P>> getScheduled();
+
+  /**
+   * Remove all scheduled entries.
+   */
+  public void clear();
+
+  /**
+   * Create an empty scheduler of the same kind and configuration.
+   *
+   * @return the new scheduler
+   */
+  public Scheduler<P> create();
+}
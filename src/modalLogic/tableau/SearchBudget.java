@@ -0,0 +1,181 @@
+/* Copyright (c) 2010, Johannes Köster <johannes.koester@tu-dortmund.de>
+ * All rights reserved.
+ *
+ * This software is open-source under the BSD license; see "license.txt"
+ * for a description.
+ */
+
+package modalLogic.tableau;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Budget of a proof search, i.e. a wall-clock deadline, a maximum number of
+ * expansions and backtracks, and a cancellation token. Expansions and
+ * backtracks are counted over all proof searches using the budget, so that a
+ * search can be resumed with raised limits. The deadline, the cancellation
+ * and the interruption of the thread are checked every 256 steps.
+ * <p>
+ * A budget may be cancelled from any thread.
+ *
+ * @author Johannes Köster <johannes.koester@tu-dortmund.de>
+ */
+public class SearchBudget {
+  private long deadline = Long.MAX_VALUE;
+  private long maxExpansions = Long.MAX_VALUE;
+  private long maxBacktracks = Long.MAX_VALUE;
+  private long expansions = 0;
+  private long backtracks = 0;
+  private volatile boolean cancelled = false;
+  private BudgetLimit exhausted;
+
+  /**
+   * Returns the deadline.
+   *
+   * @return the deadline in milliseconds since the epoch
+   */
+  public long getDeadline() {
+    return deadline;
+  }
+
+  /**
+   * Sets the deadline.
+   *
+   * @param deadline the deadline in milliseconds since the epoch (see System.currentTimeMillis())
+   */
+  public void setDeadline(long deadline) {
+    this.deadline = deadline;
+  }
+
+  /**
+   * Sets the deadline relative to now.
+   *
+   * @param timeout the time until the deadline
+   * @param unit the unit of the timeout
+   */
+  public void setTimeout(long timeout, TimeUnit unit) {
+    deadline = System.currentTimeMillis() + unit.toMillis(timeout);
+  }
+
+  /**
+   * Returns the maximum number of expansions.
+   *
+   * @return the maximum number of expansions
+   */
+  public long getMaxExpansions() {
+    return maxExpansions;
+  }
+
+  /**
+   * Sets the maximum number of expansions.
+   *
+   * @param maxExpansions the maximum number of expansions
+   */
+  public void setMaxExpansions(long maxExpansions) {
+    this.maxExpansions = maxExpansions;
+  }
+
+  /**
+   * Returns the maximum number of backtracks.
+   *
+   * @return the maximum number of backtracks
+   */
+  public long getMaxBacktracks() {
+    return maxBacktracks;
+  }
+
+  /**
+   * Sets the maximum number of backtracks.
+   *
+   * @param maxBacktracks the maximum number of backtracks
+   */
+  public void setMaxBacktracks(long maxBacktracks) {
+    this.maxBacktracks = maxBacktracks;
+  }
+
+  /**
+   * Returns the number of expansions so far.
+   *
+   * @return the number of expansions
+   */
+  public long getExpansions() {
+    return expansions;
+  }
+
+  /**
+   * Returns the number of backtracks so far.
+   *
+   * @return the number of backtracks
+   */
+  public long getBacktracks() {
+    return backtracks;
+  }
+
+  /**
+   * Cancel the proof searches using this budget.
+   */
+  public void cancel() {
+    cancelled = true;
+  }
+
+  /**
+   * Returns true if the budget was cancelled.
+   *
+   * @return true if cancelled
+   */
+  public boolean isCancelled() {
+    return cancelled;
+  }
+
+  /**
+   * Returns the limit that stopped the last proof search using this budget.
+   *
+   * @return the limit or null if the search was not stopped
+   */
+  public BudgetLimit getExhausted() {
+    return exhausted;
+  }
+
+  /**
+   * Count an expansion.
+   */
+  void expanded() {
+    expansions++;
+  }
+
+  /**
+   * Count a backtrack.
+   */
+  void backtracked() {
+    backtracks++;
+  }
+
+  /**
+   * Reset the exhausted limit before a proof search.
+   */
+  void start() {
+    exhausted = null;
+  }
+
+  /**
+   * Check if a limit is reached.
+   *
+   * @param poll true if the deadline, the cancellation and the interruption are checked, too
+   * @return true if a limit is reached
+   */
+  boolean isExhausted(boolean poll) {
+    if(expansions >= maxExpansions)
+      exhausted = BudgetLimit.EXPANSIONS;
+    else if(backtracks >= maxBacktracks)
+      exhausted = BudgetLimit.BACKTRACKS;
+    else if(poll) {
+      if(cancelled)
+        exhausted = BudgetLimit.CANCELLED;
+      else if(Thread.currentThread().isInterrupted())
+        exhausted = BudgetLimit.INTERRUPTED;
+      else if(System.currentTimeMillis() >= deadline)
+        exhausted = BudgetLimit.DEADLINE;
+    }
+    return exhausted != null;
+  }
+}
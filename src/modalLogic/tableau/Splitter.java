@@ -0,0 +1,26 @@
+/* Copyright (c) 2010, Johannes Köster <johannes.koester@tu-dortmund.de>
+ * All rights reserved.
+ *
+ * This software is open-source under the BSD license; see "license.txt"
+ * for a description.
+ */
+
+package modalLogic.tableau;
+
+/**
+ * Provides interface of splitters that may hand over the alternatives of a
+ * disjunction to other tableaux instead of expanding it by a choice.
+ *
+ * @author Johannes Köster <johannes.koester@tu-dortmund.de>
+ */
+interface Splitter<P> {
+
+  /**
+   * Split the search at a disjunction. If the search is split, the disjunction
+   * has to be expanded by the splitter.
+   *
+   * @param disjunction the disjunction to expand next
+   * @return true if the search was split
+   */
+  public boolean split(LabelledFormula<P> disjunction);
+}
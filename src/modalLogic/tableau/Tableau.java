@@ -10,12 +10,15 @@ package modalLogic.tableau;
 import java.util.ArrayList;
 import modalLogic.tableau.comparators.EqualsComparator;
 import modalLogic.formula.ParentDisj;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
 import modalLogic.formula.Formula;
 import util.Pair;
 
@@ -25,23 +28,41 @@ import util.Pair;
  * @author Johannes Köster <johannes.koester@tu-dortmund.de>
  */
 public class Tableau<P> {
+  // the interrupt flag is checked every 256 steps of the proof search
+  private static final int INTERRUPT_CHECK_MASK = 0xff;
+
   private TableauState state = TableauState.NOTINITIALIZED;
   private Formula<P> initialFormula;
+  private FormulaArena<P> arena;
   private Branch<P> branch;
   private ExpandedDisjunctions<P> expandedDisjunctions = new ExpandedDisjunctions<P>();
   private Worlds<P> worlds;
   private WorldRelation<P> rel = new WorldRelation<P>();
   private ParentDisj<P> parentDisj = new ParentDisj<P>();
-  private Rules rules = new KRules();
+  private Rules<P> rules = new KRules<P>();
   private DynamicBacktracking<P> dynBacktracking = new DynamicBacktracking<P>(this);
   private LabelledFormulas<P> labelledFormulas = new LabelledFormulas<P>(this);
   private Heuristics<P> heuristics;
   private UnitPropagation<P> unitPropagation;
+  private Nogoods<P> nogoods = new Nogoods<P>(this);
+  private SatisfiabilityCache<P> satisfiabilityCache = new SatisfiabilityCache<P>(this);
   private Comparator<P> propositionComparator;
   private DisjunctSelector<P> disjunctSelector = new DisjunctSelector<P>(this);
   private boolean lazy;
+  private boolean semanticBranching = true;
+  private RestartPolicy restartPolicy = new NoRestarts();
+  private int backtracks = 0;
+  private int restartInterval = -1;
+  private SearchBudget budget;
   private PreBlocked<P> preBlocked = new PreBlocked<P>();
+  private Splitter<P> splitter;
+  // the assumptions of the open scopes, each scope starts at its index
+  private List<LabelledFormula<P>> assumptions = new ArrayList<LabelledFormula<P>>();
+  private List<Integer> scopes = new ArrayList<Integer>();
+  // true if the formula may be shared with a clone
+  private boolean sharedFormula = false;
   private boolean dot = false;
+  private int mark = 0;
 
   /**
    * Constructor of class Tableau.
@@ -70,12 +91,13 @@ public class Tableau<P> {
   public Tableau(Rules<P> rules, Comparator<P> propositionComparator, boolean lazy) {
     this.rules = rules;
     this.heuristics = new DefaultHeuristics<P>(this);
-    worlds = new Worlds<P>(this, propositionComparator);
+    worlds = new Worlds<P>(this);
 
-    branch = new Branch<P>(this, propositionComparator);
+    branch = new Branch<P>(this);
     this.lazy = lazy;
     this.propositionComparator = propositionComparator;
-    unitPropagation = new UnitPropagation<P>(propositionComparator);
+    arena = new FormulaArena<P>(propositionComparator);
+    unitPropagation = new UnitPropagation<P>(this);
   }
 
   public Tableau(Rules<P> rules, Comparator<P> propositionComparator, boolean lazy, boolean dot) {
@@ -92,13 +114,31 @@ public class Tableau<P> {
     return unitPropagation;
   }
 
+  /**
+   * Returns the database of learned nogoods.
+   *
+   * @return the learned nogoods
+   */
+  public Nogoods<P> getNogoods() {
+    return nogoods;
+  }
+
+  /**
+   * Returns the cache of satisfiable and unsatisfiable label sets of worlds.
+   *
+   * @return the satisfiability cache
+   */
+  public SatisfiabilityCache<P> getSatisfiabilityCache() {
+    return satisfiabilityCache;
+  }
+
   /**
    * Define a subformula to be blocked prior to execution of tableau.
    *
    * @param w the world
    * @param f the subformula
    */
-  public void block(World w, Formula<P> f) {
+  public void block(World<P> w, Formula<P> f) {
     preBlocked.addBlock(w, f);
   }
 
@@ -108,10 +148,19 @@ public class Tableau<P> {
    * @param w the world
    * @param f the subformula
    */
-  public void unblock(World w, Formula<P> f) {
+  public void unblock(World<P> w, Formula<P> f) {
     preBlocked.removeBlock(w, f);
   }
 
+  /**
+   * Returns the subformulas blocked prior to execution of tableau.
+   *
+   * @return the blocked subformulas
+   */
+  public PreBlocked<P> getPreBlocked() {
+    return preBlocked;
+  }
+
   /**
    * Returns true if tableau should be lazy.
    *
@@ -121,6 +170,51 @@ public class Tableau<P> {
     return lazy;
   }
 
+  /**
+   * Sets whether the tableau should be lazy. This is only possible before the
+   * proof search started.
+   *
+   * @param lazy true if tableau should be lazy
+   * @throws IllegalStateException if the proof search already started
+   */
+  public void setLazy(boolean lazy) {
+    if(!worlds.isEmpty())
+      throw new IllegalStateException("The proof search already started.");
+    this.lazy = lazy;
+  }
+
+  /**
+   * Returns true if semantic branching is enabled.
+   *
+   * @return true if semantic branching is enabled
+   */
+  public boolean isSemanticBranching() {
+    return semanticBranching;
+  }
+
+  /**
+   * Enable or disable semantic branching. With semantic branching, the
+   * complements of the eliminated disjuncts of a disjunction are added to the
+   * branch when another disjunct is chosen, so that the search that refuted
+   * them is not repeated below the new choice.
+   *
+   * @param semanticBranching true to enable semantic branching
+   */
+  public void setSemanticBranching(boolean semanticBranching) {
+    this.semanticBranching = semanticBranching;
+  }
+
+  /**
+   * Add the complements of the eliminated disjuncts of an expanded disjunction
+   * to the current branch, if semantic branching is enabled.
+   *
+   * @param f the disjunction
+   */
+  public void addEliminatedComplements(LabelledFormula<P> f) {
+    if(semanticBranching)
+      dynBacktracking.addEliminatedComplements(f);
+  }
+
   /**
    * Returns all used labelled formulas.
    *
@@ -134,11 +228,18 @@ public class Tableau<P> {
    * Empty the tableau.
    */
   public void clear() {
+    state = TableauState.NOTINITIALIZED;
+    assumptions.clear();
+    scopes.clear();
     worlds.clear();
     branch.clear();
     labelledFormulas.clear();
     rel.clear();
     expandedDisjunctions.clear();
+    nogoods.clear();
+    satisfiabilityCache.clear();
+    heuristics.clear();
+    resetRestarts();
   }
 
   /**
@@ -148,19 +249,24 @@ public class Tableau<P> {
    */
   public void setFormula(Formula<P> formula) {
     initialFormula = formula;
-    prepareFormula(formula);
+    sharedFormula = false;
+    assumptions.clear();
+    scopes.clear();
+    arena.clear();
+    arena.add(formula);
+    nogoods.clear();
+    satisfiabilityCache.clear();
+    heuristics.clear();
+    resetRestarts();
   }
 
   /**
-   * Prepare a formula for tableau execution.
+   * Returns the compiled representation of the current formula.
    *
-   * @param formula the formula
+   * @return the compiled formula
    */
-  private void prepareFormula(Formula<P> formula) {
-    formula.setPayload(new ArrayList(3));
-    for(Formula<P> child : formula) {
-      prepareFormula(child);
-    }
+  public FormulaArena<P> getArena() {
+    return arena;
   }
 
   /**
@@ -172,14 +278,79 @@ public class Tableau<P> {
    */
   public void appendFormula(Formula<P> formula) {
     if(initialFormula.getType() == Formula.CONJUNCTION) {
-      prepareFormula(formula);
+      if(sharedFormula)
+        copyFormula();
       initialFormula.addChild(formula);
+      arena.add(formula);
       branch.add(label(worlds.getStart(), formula));
     }
     else
       throw new UnsupportedOperationException("appending only allowed to conjunctive formulae for now.");
   }
 
+  /**
+   * Open a new scope of assumptions.
+   */
+  public void push() {
+    scopes.add(assumptions.size());
+  }
+
+  /**
+   * Assume a formula in the root world until the current scope is closed. The
+   * branch of the previous proof search is kept, and the next proof search
+   * continues with the assumption.
+   *
+   * @param formula the formula in negation normal form
+   * @throws IllegalStateException if no scope is open
+   * @throws IllegalArgumentException if the formula is assumed already
+   */
+  public void assume(Formula<P> formula) {
+    if(scopes.isEmpty())
+      throw new IllegalStateException("No scope was opened.");
+    initialize();
+    if(getLabelledFormula(worlds.getStart(), formula) != null)
+      throw new IllegalArgumentException("The formula is assumed already.");
+    if(arena.getId(formula) < 0)
+      arena.add(formula);
+
+    // everything that results from the assumption depends on its decision level
+    LabelledFormula<P> lf = label(worlds.getStart(), formula);
+    BitSet dependencies = new BitSet();
+    dependencies.set(expandedDisjunctions.assume());
+    lf.setDependencies(dependencies);
+    assumptions.add(lf);
+    branch.add(lf);
+    state = TableauState.UNKNOWN;
+  }
+
+  /**
+   * Close the current scope. Its assumptions and everything that depends on
+   * them are removed from the branch, the rest of the branch is kept.
+   *
+   * @throws IllegalStateException if no scope is open
+   */
+  public void pop() {
+    if(scopes.isEmpty())
+      throw new IllegalStateException("No scope was opened.");
+    int start = scopes.remove(scopes.size() - 1);
+    while(assumptions.size() > start) {
+      LabelledFormula<P> lf = assumptions.remove(assumptions.size() - 1);
+      dynBacktracking.retractAssumption(lf, lf.getDependencies().nextSetBit(0));
+    }
+    if(state != TableauState.NOTINITIALIZED)
+      state = TableauState.UNKNOWN;
+    resetRestarts();
+  }
+
+  /**
+   * Returns the number of open scopes.
+   *
+   * @return the number of open scopes
+   */
+  public int getScopeCount() {
+    return scopes.size();
+  }
+
   /**
    * Returns the current formula.
    *
@@ -216,6 +387,57 @@ public class Tableau<P> {
     this.heuristics = heuristics;
   }
 
+  /**
+   * Returns the scheduler deciding which subformula is expanded next.
+   *
+   * @return the scheduler
+   */
+  public Scheduler<P> getScheduler() {
+    return branch.getScheduler();
+  }
+
+  /**
+   * Sets the scheduler deciding which subformula is expanded next. Default is
+   * a PriorityScheduler with the default order of formula types.
+   *
+   * @param scheduler the scheduler
+   */
+  public void setScheduler(Scheduler<P> scheduler) {
+    branch.setScheduler(scheduler);
+  }
+
+  /**
+   * Returns the restart policy.
+   *
+   * @return the restart policy
+   */
+  public RestartPolicy getRestartPolicy() {
+    return restartPolicy;
+  }
+
+  /**
+   * Sets the restart policy deciding after how many backtracks the search is
+   * restarted from the root. Default is NoRestarts, i.e. a single run.
+   *
+   * @param restartPolicy the restart policy
+   */
+  public void setRestartPolicy(RestartPolicy restartPolicy) {
+    this.restartPolicy = restartPolicy;
+    resetRestarts();
+  }
+
+  /**
+   * Helper method to start the restart policy from the beginning. A search
+   * that was stopped keeps its position in the sequence of restart intervals
+   * and its backtracks since the last restart, so it is only called when the
+   * formula, the assumptions or the policy change.
+   */
+  private void resetRestarts() {
+    restartPolicy.reset();
+    backtracks = 0;
+    restartInterval = restartPolicy.nextInterval();
+  }
+
   /**
    * Returns the disjunct selector.
    *
@@ -236,27 +458,48 @@ public class Tableau<P> {
 
   /**
    * Search for a proof of a formula in negation normal form.
-   * Undefined results for other formulae.
+   * Undefined results for other formulae. The search can be cancelled by
+   * interrupting the thread.
    * 
    * @return true if proof succesful
+   * @throws CancellationException if the thread was interrupted
    */
   public boolean proofSearch() {
+    if(proofSearch(null) == TableauState.UNKNOWN)
+      throw new CancellationException("The proof search was interrupted.");
+    return state == TableauState.SATISFIABLE;
+  }
 
-    if(getState() == TableauState.NOTINITIALIZED)
-      branch.add(label(worlds.newWorld(), initialFormula));
+  /**
+   * Search for a proof of a formula in negation normal form within a budget.
+   * If a limit of the budget is reached or the thread is interrupted, the
+   * search stops between two steps with state UNKNOWN. The tableau stays
+   * consistent, so the search can be resumed by calling this method again.
+   *
+   * @param budget the budget or null for no limits
+   * @return the state after the search
+   */
+  public TableauState proofSearch(SearchBudget budget) {
+
+    initialize();
+    this.budget = budget;
+    if(budget != null)
+      budget.start();
 
-    int count = 0;
-    Iterator<Pair<LabelledFormula<P>>> clashes = branch.clashes();
-    LabelledFormula<P> unexpanded = branch.unexpanded();
-    while(clashes.hasNext() || unexpanded != null) {
-      if(!clashes.hasNext()) {
+    int steps = 0;
 
-        switch(unexpanded.getFormula().getType()) {
+    // only take the next unexpanded subformula when there is no clash to resolve
+    LabelledFormula<P> unexpanded = null;
+    while(branch.isClashing() || (unexpanded = branch.unexpanded()) != null) {
+      if(!branch.isClashing()) {
+
+        switch(arena.getType(unexpanded.getFormulaId())) {
           case Formula.CONJUNCTION:
             rules.conjunction(unexpanded, this);
             break;
           case Formula.DISJUNCTION:
-            rules.disjunction(unexpanded, this);
+            if(splitter == null || !splitter.split(unexpanded))
+              rules.disjunction(unexpanded, this);
             break;
           case Formula.POSSIBILITY:
             rules.diamond(unexpanded, this);
@@ -271,44 +514,96 @@ public class Tableau<P> {
           default:
             throw new UnsupportedOperationException("The found formula type is not accepted. Formula must be in negation normal form.");
         }
-        setExpanded(unexpanded);
-        if(dot) {
-          // TODO add dot output here
-          System.out.println(unexpanded);
+        if(satisfiabilityCache.isStopped()) {
+          // the possibility subformula was scheduled again while waiting for the executor
+          satisfiabilityCache.cancel();
+          state = TableauState.UNKNOWN;
+          return state;
         }
+        setExpanded(unexpanded);
+        if(budget != null)
+          budget.expanded();
       }
       else {
-        LabelledFormula<P> f = dynBacktracking.findBacktrackingPoint(clashes);
+        LabelledFormula<P> f = dynBacktracking.findBacktrackingPoint(branch.clashes());
         if(f == null) {
-          Iterator<Pair<LabelledFormula<P>>> cl = branch.clashes();
-          while(cl.hasNext()) {
-        	  System.out.println(cl.next());
-          }
+          satisfiabilityCache.cancel();
           state = TableauState.UNSATISFIABLE;
-          return false;
+          return state;
         }
         else {
           dynBacktracking.dynamicBacktrack(f);
+          if(budget != null)
+            budget.backtracked();
+          if(restartInterval >= 0 && ++backtracks >= restartInterval) {
+            // learned nogoods and heuristic scores are kept
+            dynBacktracking.restart();
+            backtracks = 0;
+            restartInterval = restartPolicy.nextInterval();
+          }
         }
       }
-      clashes = branch.clashes();
-      unexpanded = branch.unexpanded();
+      // checked between steps, so that the branch stays consistent, and
+      // polled after the first step already, so that a cancelled search stops at once
+      boolean poll = (steps++ & INTERRUPT_CHECK_MASK) == 0;
+      if((budget != null) ? budget.isExhausted(poll) : poll && Thread.currentThread().isInterrupted()) {
+        satisfiabilityCache.cancel();
+        state = TableauState.UNKNOWN;
+        return state;
+      }
     }
+    satisfiabilityCache.cancel();
+    satisfiabilityCache.satisfiable();
     state = TableauState.SATISFIABLE;
-    return true;
+    return state;
   }
 
   /**
-   * Add a labelled subformula to the current branch.
+   * Returns the budget of the running proof search.
+   *
+   * @return the budget or null for no limits
+   */
+  SearchBudget getBudget() {
+    return budget;
+  }
+
+  /**
+   * Helper method to create the root world with the formula, unless a search
+   * that was stopped, cloned during the search or given assumptions is
+   * continued.
+   */
+  private void initialize() {
+    if(worlds.isEmpty())
+      branch.add(label(worlds.newWorld(), initialFormula));
+  }
+
+  /**
+   * Add a labelled subformula to the current branch. The subformula inherits the
+   * dependency sets of its reasons, plus the decision level of the reason if
+   * that is the expanded disjunction it was chosen from.
    *
    * @param f the labelled subformula
    * @param reason the subformula that marks the reason for this
    */
-  public void addToBranch(LabelledFormula<P> f, LabelledFormula<P>... reason) {
-    branch.add(f);
+  @SafeVarargs
+  public final void addToBranch(LabelledFormula<P> f, LabelledFormula<P>... reason) {
+    BitSet dependencies = null;
     for(LabelledFormula<P> r : reason) {
       r.addResultingFormula(f);
+      if(dependencies == null && r.getDecisionLevel() < 0) {
+        // dependency sets are never modified, so they can be shared
+        dependencies = r.getDependencies();
+      }
+      else {
+        dependencies = (dependencies == null) ? new BitSet() : (BitSet) dependencies.clone();
+        dependencies.or(r.getDependencies());
+        if(r.getDecisionLevel() >= 0)
+          dependencies.set(r.getDecisionLevel());
+      }
     }
+    if(dependencies != null)
+      f.setDependencies(dependencies);
+    branch.add(f);
   }
 
   /**
@@ -320,6 +615,35 @@ public class Tableau<P> {
     f.setExpanded();
   }
 
+  /**
+   * Sets the splitter that may split the search at disjunctions.
+   *
+   * @param splitter the splitter or null
+   */
+  void setSplitter(Splitter<P> splitter) {
+    this.splitter = splitter;
+  }
+
+  /**
+   * Expand a disjunction without a choice, by adding one of its disjuncts and
+   * the complements of the preceding ones. For a disjunction that does not
+   * depend on any choice, the tableaux for all disjuncts partition the search.
+   *
+   * @param disjunction the disjunction
+   * @param i the index of the disjunct
+   */
+  void assertDisjunct(LabelledFormula<P> disjunction, int i) {
+    World<P> w = disjunction.getWorld();
+    int id = disjunction.getFormulaId();
+    for(int j = 0; j <= i; j++) {
+      int c = arena.getChild(id, j);
+      LabelledFormula<P> lf = label(w, (j < i) ? arena.getComplement(c) : c);
+      addToBranch(lf, disjunction);
+      lf.setState(FormulaState.ACTIVE);
+    }
+    setExpanded(disjunction);
+  }
+
   /**
    * Record disjunction to be expanded.
    *
@@ -354,7 +678,7 @@ public class Tableau<P> {
    * @param w1 a world
    * @param reason the subformula that caused this
    */
-  public void relateWorlds(World w0, World w1, LabelledFormula<P> reason) {
+  public void relateWorlds(World<P> w0, World<P> w1, LabelledFormula<P> reason) {
     rel.add(w0, w1, reason);
   }
 
@@ -380,13 +704,13 @@ public class Tableau<P> {
 
   /**
    * Return all labelled formulas the elimination explanation of which contains
-   * a given formula f.
+   * a given decision level.
    *
-   * @param f a subformula
+   * @param level the decision level
    * @return the labelled formulas
    */
-  public Collection<LabelledFormula<P>> getExplanationContains(Formula<P> f) {
-    return labelledFormulas.getEliminationExplanationContains(f);
+  public Collection<LabelledFormula<P>> getExplanationContains(int level) {
+    return labelledFormulas.getEliminationExplanationContains(level);
   }
 
   /**
@@ -396,10 +720,21 @@ public class Tableau<P> {
    * @param f the subformula
    * @return the labelled subformula
    */
-  public LabelledFormula<P> label(World w, Formula<P> f) {
+  public LabelledFormula<P> label(World<P> w, Formula<P> f) {
     return labelledFormulas.newLabelledFormula(w, f);
   }
 
+  /**
+   * Label a subformula given by its id in the compiled formula.
+   *
+   * @param w the world
+   * @param id the id of the subformula
+   * @return the labelled subformula
+   */
+  public LabelledFormula<P> label(World<P> w, int id) {
+    return labelledFormulas.newLabelledFormula(w, id);
+  }
+
   /**
    * Returns true if a subformula is blocked in a given world.
    *
@@ -407,11 +742,12 @@ public class Tableau<P> {
    * @param f the subformula
    * @return true if the subformula is blocked
    */
-  public boolean isBlocked(World w, Formula<P> f) {
+  public boolean isBlocked(World<P> w, Formula<P> f) {
     if(preBlocked.isBlocked(w, f))
       return true;
     LabelledFormula<P> lf = getLabelledFormula(w, f);
     if(lf!=null) {
+      dynBacktracking.validate(lf);
       return lf.getState() == FormulaState.BLOCKED;
     }
     return false;
@@ -424,12 +760,13 @@ public class Tableau<P> {
    * @param f the subformula
    * @return true if the subformula is neither expanded nor blocked
    */
-  public boolean isUnknown(World w, Formula<P> f) {
+  public boolean isUnknown(World<P> w, Formula<P> f) {
     if(preBlocked.isBlocked(w, f))
       return false;
     LabelledFormula<P> lf = getLabelledFormula(w, f);
     if(lf!=null) {
-      return lf.getState().equals(FormulaState.UNKNOWN);
+      dynBacktracking.validate(lf);
+      return lf.getState() == FormulaState.UNKNOWN;
     }
     return true;
   }
@@ -441,13 +778,19 @@ public class Tableau<P> {
    * @param f the subformula
    * @return the labelled formula
    */
-  public LabelledFormula<P> getLabelledFormula(World w, Formula<P> f) {
-    for(LabelledFormula<P> lf : getLabelledFormulae(f)) {
-      if(lf.getWorld() == w) {
-        return lf;
-      }
-    }
-    return null;
+  public LabelledFormula<P> getLabelledFormula(World<P> w, Formula<P> f) {
+    return labelledFormulas.get(w, f);
+  }
+
+  /**
+   * Returns the labelled formula for a given world and subformula id.
+   *
+   * @param w the world
+   * @param id the id of the subformula in the compiled formula
+   * @return the labelled formula
+   */
+  public LabelledFormula<P> getLabelledFormula(World<P> w, int id) {
+    return labelledFormulas.get(w, id);
   }
 
   /**
@@ -457,7 +800,7 @@ public class Tableau<P> {
    * @return all labelled formulas
    */
   public Collection<LabelledFormula<P>> getLabelledFormulae(Formula<P> f) {
-    return (Collection<LabelledFormula<P>>)f.getPayload();
+    return labelledFormulas.getByFormula(arena.getId(f));
   }
 
   /**
@@ -467,8 +810,9 @@ public class Tableau<P> {
    * @return true if the subformula has an unknown disjunct
    */
   public boolean hasUnknownDisjunct(LabelledFormula<P> lf) {
-    for(Formula<P> f1 : lf.getFormula()) {
-      if(isUnknown(lf.getWorld(), f1)) {
+    int id = lf.getFormulaId();
+    for(int i = 0; i < arena.getChildCount(id); i++) {
+      if(isUnknown(lf.getWorld(), arena.getFormula(arena.getChild(id, i)))) {
         return true;
       }
     }
@@ -482,10 +826,11 @@ public class Tableau<P> {
    * @return the active disjunct
    */
   public LabelledFormula<P> getActiveDisjunct(LabelledFormula<P> lf) {
-    for(Formula<P> f1 : lf.getFormula()) {
-      LabelledFormula<P> lf1 = getLabelledFormula(lf.getWorld(), f1);
-      if(lf1 != null && lf1.getState().equals(FormulaState.ACTIVE))
-        return getLabelledFormula(lf.getWorld(), f1);
+    int id = lf.getFormulaId();
+    for(int i = 0; i < arena.getChildCount(id); i++) {
+      LabelledFormula<P> lf1 = getLabelledFormula(lf.getWorld(), arena.getChild(id, i));
+      if(lf1 != null && lf1.getState() == FormulaState.ACTIVE)
+        return lf1;
     }
     return null; // this may not happen
   }
@@ -505,19 +850,34 @@ public class Tableau<P> {
    * @param lfs the subformulas
    */
   public void removeFromExpandedDisjunctions(Collection<LabelledFormula<P>> lfs) {
-    expandedDisjunctions.removeAll(lfs);
+    for(LabelledFormula<P> lf : lfs) {
+      expandedDisjunctions.remove(lf);
+    }
   }
 
   /**
-   * Returns the resulting expanded subformulas for a given subformula.
+   * Returns the resulting expanded subformulas for a given subformula, i.e.
+   * all subformulas that transitively depend on it. Each subformula is
+   * visited once, so the cost is linear in the number of results.
    *
    * @param f the subformula
    * @return the resulting subformulas
    */
   public Collection<LabelledFormula<P>> getResultingFormulas(LabelledFormula<P> f) {
-    Collection<LabelledFormula<P>> results = new ArrayList<LabelledFormula<P>>(f.getResultingFormulas());
-    for(LabelledFormula<P> rlf : new ArrayList<LabelledFormula<P>>(results)) {
-      results.addAll(getResultingFormulas(rlf));
+    int m = ++mark;
+    Collection<LabelledFormula<P>> results = new ArrayList<LabelledFormula<P>>();
+    ArrayList<LabelledFormula<P>> stack = new ArrayList<LabelledFormula<P>>();
+    f.setMark(m);
+    stack.add(f);
+    while(!stack.isEmpty()) {
+      LabelledFormula<P> lf = stack.remove(stack.size() - 1);
+      for(LabelledFormula<P> rlf : lf.getResultingFormulas()) {
+        if(rlf.getMark() != m && !rlf.isDiscarded()) {
+          rlf.setMark(m);
+          results.add(rlf);
+          stack.add(rlf);
+        }
+      }
     }
     return results;
   }
@@ -531,6 +891,20 @@ public class Tableau<P> {
     return worlds;
   }
 
+  /**
+   * Extract a Kripke model of the formula from the open branch found by the
+   * last proof search. The model is a copy and stays valid when the tableau
+   * changes.
+   *
+   * @return the model
+   * @throws IllegalStateException if the formula was not proven satisfiable
+   */
+  public KripkeModel<P> getKripkeModel() {
+    if(state != TableauState.SATISFIABLE)
+      throw new IllegalStateException("The formula was not proven satisfiable.");
+    return new KripkeModel<P>(this);
+  }
+
   /**
    * Removes all worlds caused by a given subformula.
    *
@@ -549,39 +923,72 @@ public class Tableau<P> {
   }
 
   /**
-   * Clone the tableau.
+   * Create an empty tableau with the same configuration, i.e. rules,
+   * proposition comparator, laziness, heuristics, scheduler, restart policy,
+   * semantic branching and the capacities of nogoods and satisfiability cache.
+   *
+   * @return the new tableau
+   */
+  public Tableau<P> create() {
+    Tableau<P> t = new Tableau<P>(rules, propositionComparator, lazy, dot);
+    t.semanticBranching = semanticBranching;
+    t.heuristics = heuristics.create(t);
+    t.setScheduler(getScheduler().create());
+    t.setRestartPolicy(restartPolicy.create());
+    t.nogoods.setCapacity(nogoods.getCapacity());
+    t.satisfiabilityCache.setCapacity(satisfiabilityCache.getCapacity());
+    return t;
+  }
+
+  /**
+   * Clone the tableau. The clone shares the formula and its compiled
+   * representation with this tableau until either tableau modifies them.
+   * All search state is copied, i.e. the worlds, their relation, the labelled
+   * formulas, the expanded disjunctions and the branch, so cloning takes time
+   * linear in the size of the search state.
    * 
    * @return the cloned tableau
    */
   @Override
   public Tableau<P> clone() {
-    // clone formula
-    Map<Formula<P>, Formula<P>> formulaMap = initialFormula.cloneWithReference();
+    return clone(new HashMap<LabelledFormula<P>, LabelledFormula<P>>(labelledFormulas.size()));
+  }
 
-    Tableau<P> clone = new Tableau<P>(rules, propositionComparator, lazy);
+  /**
+   * Clone the tableau. This is possible during the proof search, too.
+   *
+   * @param labelledFormulaMap the map to fill with the labelled formulas and their clones
+   * @return the cloned tableau
+   */
+  Tableau<P> clone(Map<LabelledFormula<P>, LabelledFormula<P>> labelledFormulaMap) {
+    Tableau<P> clone = create();
     clone.state = state;
 
-    // handle initial formula
-    clone.setFormula(formulaMap.get(initialFormula));
+    // share formula, subformulas keep their ids
+    clone.initialFormula = initialFormula;
+    clone.arena = arena.copy();
+    sharedFormula = true;
+    clone.sharedFormula = true;
 
     // handle worlds
     Map<World<P>, World<P>> worldMap = new HashMap<World<P>, World<P>>(worlds.size());
     clone.worlds.setCount(worlds.getCount());
     for(World<P> w : worlds) {
-      World<P> v = new World<P>(w.getId(), propositionComparator);
+      World<P> v = new World<P>(w.getId(), clone.arena);
       worldMap.put(w, v);
       clone.worlds.add(v);
     }
 
     // handle labelled formulae
-    Map<LabelledFormula<P>, LabelledFormula<P>> labelledFormulaMap = new HashMap<LabelledFormula<P>, LabelledFormula<P>>(labelledFormulas.size());
     for(LabelledFormula<P> lf : labelledFormulas) {
       LabelledFormula<P> lf2 = clone.labelledFormulas.newLabelledFormula(
-              worldMap.get(lf.getWorld()), formulaMap.get(lf.getFormula()));
+              worldMap.get(lf.getWorld()), lf.getFormulaId());
       
-      for(Formula<P> elim : lf.getEliminationExplanation()) {
-        lf2.getEliminationExplanation().add(formulaMap.get(elim));
-      }
+      // stale eliminations of a lazy tableau must not survive cloning
+      dynBacktracking.validate(lf);
+      // decision levels are kept, so explanations and dependencies can be shared
+      lf2.setEliminationExplanation(lf.getEliminationExplanation());
+      lf2.setDependencies(lf.getDependencies());
 
       lf2.setState(lf.getState());
       lf2.setExpanded(lf.isExpanded());
@@ -592,20 +999,24 @@ public class Tableau<P> {
     for(LabelledFormula<P> lf : labelledFormulas) {
       LabelledFormula<P> lf2 = labelledFormulaMap.get(lf);
       for(LabelledFormula<P> res : lf.getResultingFormulas()) {
-        lf2.addResultingFormula(labelledFormulaMap.get(res));
+        // results that were undone are not cloned
+        if(labelledFormulaMap.containsKey(res))
+          lf2.addResultingFormula(labelledFormulaMap.get(res));
       }
+      if(lf.propagatedFrom != null)
+        lf2.propagatedFrom = labelledFormulaMap.get(lf.propagatedFrom);
+      if(lf.complement != null)
+        lf2.complement = labelledFormulaMap.get(lf.complement);
     }
 
-    // handle literals and reasons stored in each world
+    // handle reasons and necessity subformulas stored in each world
     for(World<P> w : worlds) {
       World<P> v = worldMap.get(w);
-      for(LabelledFormula<P> pos : w.getPositiveLiterals()) {
-        v.addLiteral(labelledFormulaMap.get(pos));
-      }
-      for(LabelledFormula<P> neg : w.getNegativeLiterals()) {
-        v.addLiteral(labelledFormulaMap.get(neg));
-      }
       v.setReason(labelledFormulaMap.get(w.getReason()));
+      if(w.hasLearnedFormulas())
+        v.setLearnedFormulas();
+      for(int i = 0; i < w.getBoxFormulaCount(); i++)
+        v.addBoxFormula(w.getBoxFormula(i));
     }
 
     // handle world relation
@@ -618,15 +1029,35 @@ public class Tableau<P> {
     }
 
     // handle expanded disjunctions
-    for(LabelledFormula<P> lf : expandedDisjunctions) {
-      clone.expandedDisjunctions.add(labelledFormulaMap.get(lf));
-    }
+    expandedDisjunctions.copyTo(clone.expandedDisjunctions, labelledFormulaMap);
+    for(LabelledFormula<P> lf : assumptions)
+      clone.assumptions.add(labelledFormulaMap.get(lf));
+    clone.scopes.addAll(scopes);
+
+    // possibility subformulas closed by the cache have to be reopened in the clone, too
+    satisfiabilityCache.cloneClosed(clone.satisfiabilityCache, worldMap, labelledFormulaMap);
 
-    // build branch
+    // build branch in chronological order, this also fills the literals of the worlds
+    for(LabelledFormula<P> lf : branch.getTrail()) {
+      clone.branch.addExpanded(labelledFormulaMap.get(lf));
+    }
     for(LabelledFormula<P> lf : branch.getUnexpanded()) {
-      clone.branch.getUnexpanded().add(labelledFormulaMap.get(lf));
+      clone.branch.unexpand(labelledFormulaMap.get(lf));
     }
 
     return clone;
   }
+
+  /**
+   * Helper method to take a private copy of the formula shared with clones
+   * before modifying it. The subformulas keep their ids.
+   */
+  private void copyFormula() {
+    Map<Formula<P>, Formula<P>> formulaMap = new IdentityHashMap<Formula<P>, Formula<P>>();
+    initialFormula = initialFormula.cloneWithReference(formulaMap);
+    arena.replace(formulaMap);
+    labelledFormulas.replace(formulaMap);
+    preBlocked.replace(formulaMap);
+    sharedFormula = false;
+  }
 }
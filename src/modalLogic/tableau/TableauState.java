@@ -8,10 +8,11 @@
 package modalLogic.tableau;
 
 /**
- * Enumeration of possible tableau states.
+ * Enumeration of possible tableau states. UNKNOWN is the state of a proof
+ * search that was stopped before it finished, e.g. by its budget.
  * 
  * @author Johannes Köster <johannes.koester@tu-dortmund.de>
  */
 public enum TableauState {
-  NOTINITIALIZED,UNSATISFIABLE, SATISFIABLE;
+  NOTINITIALIZED,UNSATISFIABLE, SATISFIABLE, UNKNOWN;
 }
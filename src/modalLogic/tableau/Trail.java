@@ -0,0 +1,142 @@
+/* Copyright (c) 2010, Johannes Köster <johannes.koester@tu-dortmund.de>
+ * All rights reserved.
+ *
+ * This software is open-source under the BSD license; see "license.txt"
+ * for a description.
+ */
+
+package modalLogic.tableau;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Chronological trail of the subformulas on the current branch. The trail is
+ * a doubly linked list threaded through the labelled formulas themselves, so
+ * that dynamic backtracking can remove any entry in constant time while
+ * keeping the independent entries that were added later.
+ *
+ * @author Johannes Köster <johannes.koester@tu-dortmund.de>
+ */
+public class Trail<P> implements Iterable<LabelledFormula<P>> {
+  private LabelledFormula<P> first;
+  private LabelledFormula<P> last;
+  private int size = 0;
+
+  /**
+   * Append a subformula to the trail.
+   *
+   * @param lf the subformula
+   */
+  public void push(LabelledFormula<P> lf) {
+    if(lf.onTrail)
+      return;
+    lf.trailPrev = last;
+    lf.trailNext = null;
+    if(last != null)
+      last.trailNext = lf;
+    else
+      first = lf;
+    last = lf;
+    lf.onTrail = true;
+    size++;
+  }
+
+  /**
+   * Remove a subformula from the trail.
+   *
+   * @param lf the subformula
+   */
+  public void remove(LabelledFormula<P> lf) {
+    if(!lf.onTrail)
+      return;
+    if(lf.trailPrev != null)
+      lf.trailPrev.trailNext = lf.trailNext;
+    else
+      first = lf.trailNext;
+    if(lf.trailNext != null)
+      lf.trailNext.trailPrev = lf.trailPrev;
+    else
+      last = lf.trailPrev;
+    lf.trailPrev = null;
+    lf.trailNext = null;
+    lf.onTrail = false;
+    size--;
+  }
+
+  /**
+   * Returns true if a subformula is on the trail.
+   *
+   * @param lf the subformula
+   * @return true if the subformula is on the trail
+   */
+  public boolean contains(LabelledFormula<P> lf) {
+    return lf.onTrail;
+  }
+
+  /**
+   * Returns the most recent subformula.
+   *
+   * @return the most recent subformula or null if the trail is empty
+   */
+  public LabelledFormula<P> last() {
+    return last;
+  }
+
+  /**
+   * Returns the number of subformulas on the trail.
+   *
+   * @return the number of subformulas
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Clear the trail.
+   */
+  public void clear() {
+    LabelledFormula<P> lf = first;
+    while(lf != null) {
+      LabelledFormula<P> next = lf.trailNext;
+      lf.trailPrev = null;
+      lf.trailNext = null;
+      lf.onTrail = false;
+      lf = next;
+    }
+    first = null;
+    last = null;
+    size = 0;
+  }
+
+  /**
+   * Iterator over the subformulas in chronological order.
+   *
+   * @return the iterator
+   */
+  @Override
+  public Iterator<LabelledFormula<P>> iterator() {
+    return new Iterator<LabelledFormula<P>>() {
+      private LabelledFormula<P> next = first;
+
+      @Override
+      public boolean hasNext() {
+        return next != null;
+      }
+
+      @Override
+      public LabelledFormula<P> next() {
+        if(next == null)
+          throw new NoSuchElementException();
+        LabelledFormula<P> lf = next;
+        next = lf.trailNext;
+        return lf;
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException("Not supported.");
+      }
+    };
+  }
+}
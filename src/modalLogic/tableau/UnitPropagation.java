@@ -8,28 +8,31 @@ package modalLogic.tableau;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
 import modalLogic.formula.Formula;
-import modalLogic.formula.Literal;
 
 /**
  * Implementation of unit propagation to predict the best expansion due to
- * current branch.
+ * current branch. Scheduled disjunctions watch two of their disjuncts that are
+ * not falsified by the literals of their world. When a watched literal disjunct
+ * gets falsified, another disjunct is watched instead. If there is none, the
+ * disjunction is unit and expanded next, asserting its only live disjunct
+ * without opening a decision level.
  *
  * @author Johannes Köster <johannes.koester@tu-dortmund.de>
  */
 public class UnitPropagation<P> {
 
-  private Comparator<P> propositionComparator;
+  private Tableau<P> tableau;
 
   /**
    * Constructor of class UnitPropagation.
    *
-   * @param propositionComparator a comparator for propositions
+   * @param tableau the tableau
    */
-  public UnitPropagation(Comparator<P> propositionComparator) {
-    this.propositionComparator = propositionComparator;
+  public UnitPropagation(Tableau<P> tableau) {
+    this.tableau = tableau;
   }
 
   /**
@@ -39,41 +42,268 @@ public class UnitPropagation<P> {
    * @return the selected disjunct
    */
   public Iterator<Formula<P>> selectDisjunct(LabelledFormula<P> disjunction) {
-    Collection<Formula<P>> disjuncts = new ArrayList<Formula<P>>();
-    for (Formula<P> d : disjunction.getFormula()) {
-      disjuncts.add(d);
+    FormulaArena<P> arena = tableau.getArena();
+    int id = disjunction.getFormulaId();
+    Collection<Formula<P>> disjuncts = new ArrayList<Formula<P>>(arena.getChildCount(id));
+    for (int i = 0; i < arena.getChildCount(id); i++) {
+      int d = arena.getChild(id, i);
+      if (!isClashing(disjunction.getWorld(), d)) {
+        disjuncts.add(arena.getFormula(d));
+      }
     }
 
-    removeClashing(true, disjunction.getWorld().getPositiveLiterals(), disjuncts);
-    removeClashing(false, disjunction.getWorld().getNegativeLiterals(), disjuncts);
-
     return disjuncts.iterator();
   }
 
   /**
-   * Helper method to remove potentially clashing disjuncts when looking at
-   * current branch.
+   * Helper method to check if a disjunct potentially clashes with the literals
+   * of the current branch.
    *
-   * @param positive whether literals are not negated
-   * @param literals literals of the current world
-   * @param disjuncts disjunct to select from
+   * @param w the world of the disjunction
+   * @param d the id of the disjunct
+   * @return true if the disjunct clashes
    */
-  private void removeClashing(boolean positive, Iterable<LabelledFormula<P>> literals, Iterable<Formula<P>> disjuncts) {
-    for (LabelledFormula<P> l : literals) {
-      Iterator<Formula<P>> ite = disjuncts.iterator();
-      while (ite.hasNext()) {
-        Formula<P> d = ite.next();
-
-        if (d.isNegation() == positive) {
-          if (d.getType() == Formula.LITERAL
-                  && l.getFormula().getType() == Formula.LITERAL
-                  && propositionComparator.compare(l.getFormula().getProposition(), d.getProposition()) == 0) {
-            ite.remove();
-          } else if (d.getType() == Formula.CONSTANT && l.getFormula().getType() == Formula.CONSTANT) {
-            ite.remove();
-          }
+  private boolean isClashing(World<P> w, int d) {
+    FormulaArena<P> arena = tableau.getArena();
+    switch (arena.getType(d)) {
+      case Formula.LITERAL:
+        int p = arena.getProposition(d);
+        return arena.isNegation(d) ? w.getPositive().get(p) : w.getNegative().get(p);
+      case Formula.CONSTANT:
+        return arena.isNegation(d) ? w.hasVerum() : w.hasFalsum();
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Start watching a disjunction that was scheduled for expansion.
+   *
+   * @param disjunction the disjunction
+   */
+  public void watch(LabelledFormula<P> disjunction) {
+    FormulaArena<P> arena = tableau.getArena();
+    int id = disjunction.getFormulaId();
+    disjunction.watch0 = -1;
+    disjunction.watch1 = -1;
+    for (int i = 0; i < arena.getChildCount(id) && disjunction.watch1 < 0; i++) {
+      if (!isFalsified(disjunction.getWorld(), arena.getChild(id, i))) {
+        if (disjunction.watch0 < 0) {
+          disjunction.watch0 = i;
+        } else {
+          disjunction.watch1 = i;
         }
       }
     }
+    if (disjunction.watch1 < 0) {
+      tableau.getBranch().addUnit(disjunction);
+      return;
+    }
+    addWatch(disjunction, disjunction.watch0);
+    addWatch(disjunction, disjunction.watch1);
+  }
+
+  /**
+   * Visit the disjunctions watching the disjunct falsified by a literal that
+   * was added to the branch.
+   *
+   * @param literal the literal
+   */
+  public void assigned(LabelledFormula<P> literal) {
+    FormulaArena<P> arena = tableau.getArena();
+    int p = arena.getProposition(literal.getFormulaId());
+    if (p < 0) {
+      return;
+    }
+    boolean negated = !arena.isNegation(literal.getFormulaId());
+    List<LabelledFormula<P>> watches = literal.getWorld().getWatches(p, negated);
+    int k = 0;
+    while (k < watches.size()) {
+      LabelledFormula<P> d = watches.get(k);
+      int falsified = watched(d, p, negated);
+      if (!d.isPending() || d.isDiscarded() || falsified < 0) {
+        removeWatch(watches, k);
+        continue;
+      }
+      int replacement = findWatch(d);
+      if (replacement >= 0) {
+        if (falsified == d.watch0) {
+          d.watch0 = replacement;
+        } else {
+          d.watch1 = replacement;
+        }
+        removeWatch(watches, k);
+        addWatch(d, replacement);
+      } else {
+        tableau.getBranch().addUnit(d);
+        k++;
+      }
+    }
+  }
+
+  /**
+   * Expand a disjunction deterministically if at most one of its disjuncts is
+   * not falsified by the literals of its world. The remaining disjunct is added
+   * with the disjunction and the falsifying literals as reasons.
+   *
+   * @param disjunction the disjunction
+   * @return true if the disjunction was expanded
+   */
+  public boolean propagate(LabelledFormula<P> disjunction) {
+    FormulaArena<P> arena = tableau.getArena();
+    World<P> w = disjunction.getWorld();
+    int id = disjunction.getFormulaId();
+    int n = arena.getChildCount(id);
+    List<LabelledFormula<P>> reasons = new ArrayList<LabelledFormula<P>>(n);
+    reasons.add(disjunction);
+    int live = -1;
+    for (int i = 0; i < n; i++) {
+      int c = arena.getChild(id, i);
+      if (!isFalsified(w, c)) {
+        if (live >= 0) {
+          return false;
+        }
+        live = c;
+      }
+    }
+    if (live < 0) {
+      // all disjuncts are falsified, the last one will clash
+      live = arena.getChild(id, n - 1);
+    }
+    for (int i = 0; i < n; i++) {
+      int c = arena.getChild(id, i);
+      LabelledFormula<P> falsifier = (c == live) ? null : getFalsifier(w, c);
+      if (falsifier != null) {
+        reasons.add(falsifier);
+      }
+    }
+
+    // a disjunct labelled before, e.g. a choice retracted by backtracking, is
+    // reused unless a clash blocked it
+    LabelledFormula<P> lf = tableau.getLabelledFormula(w, live);
+    if (lf == null || lf.getState() == FormulaState.BLOCKED) {
+      lf = tableau.label(w, live);
+    }
+    lf.propagatedFrom = disjunction;
+    tableau.addToBranch(lf, reasons.toArray(newArray(reasons.size())));
+    lf.setState(FormulaState.ACTIVE);
+    return true;
+  }
+
+  /**
+   * Helper method to check if a disjunct is falsified by the literals of a world.
+   *
+   * @param w the world
+   * @param d the id of the disjunct
+   * @return true if the disjunct is falsified
+   */
+  private boolean isFalsified(World<P> w, int d) {
+    FormulaArena<P> arena = tableau.getArena();
+    switch (arena.getType(d)) {
+      case Formula.LITERAL:
+        int p = arena.getProposition(d);
+        return arena.isNegation(d) ? w.getPositive().get(p) : w.getNegative().get(p);
+      case Formula.CONSTANT:
+        return arena.isNegation(d);
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Helper method to return a literal that falsifies a disjunct.
+   *
+   * @param w the world
+   * @param d the id of the disjunct
+   * @return the literal or null if there is none
+   */
+  private LabelledFormula<P> getFalsifier(World<P> w, int d) {
+    FormulaArena<P> arena = tableau.getArena();
+    if (arena.getType(d) != Formula.LITERAL) {
+      return null;
+    }
+    return w.getLiteral(arena.getProposition(d), !arena.isNegation(d));
+  }
+
+  /**
+   * Helper method to find a disjunct to watch that is not falsified.
+   *
+   * @param disjunction the disjunction
+   * @return the index of the disjunct or -1 if there is none
+   */
+  private int findWatch(LabelledFormula<P> disjunction) {
+    FormulaArena<P> arena = tableau.getArena();
+    int id = disjunction.getFormulaId();
+    for (int i = 0; i < arena.getChildCount(id); i++) {
+      if (i != disjunction.watch0 && i != disjunction.watch1
+              && !isFalsified(disjunction.getWorld(), arena.getChild(id, i))) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Helper method to return which watched disjunct of a disjunction is a given literal.
+   *
+   * @param disjunction the disjunction
+   * @param p the proposition id of the literal
+   * @param negated whether the literal is negated
+   * @return the index of the watched disjunct or -1
+   */
+  private int watched(LabelledFormula<P> disjunction, int p, boolean negated) {
+    FormulaArena<P> arena = tableau.getArena();
+    int id = disjunction.getFormulaId();
+    if (disjunction.watch0 >= 0) {
+      int c = arena.getChild(id, disjunction.watch0);
+      if (arena.getProposition(c) == p && arena.isNegation(c) == negated) {
+        return disjunction.watch0;
+      }
+    }
+    if (disjunction.watch1 >= 0) {
+      int c = arena.getChild(id, disjunction.watch1);
+      if (arena.getProposition(c) == p && arena.isNegation(c) == negated) {
+        return disjunction.watch1;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Helper method to add a disjunction to the watches of one of its disjuncts.
+   * Disjuncts that are no literals can not be falsified and need no watches.
+   *
+   * @param disjunction the disjunction
+   * @param i the index of the disjunct
+   */
+  private void addWatch(LabelledFormula<P> disjunction, int i) {
+    FormulaArena<P> arena = tableau.getArena();
+    int c = arena.getChild(disjunction.getFormulaId(), i);
+    if (arena.getType(c) == Formula.LITERAL) {
+      disjunction.getWorld().getWatches(arena.getProposition(c), arena.isNegation(c)).add(disjunction);
+    }
+  }
+
+  /**
+   * Helper method to remove an entry from a watch list.
+   *
+   * @param watches the watch list
+   * @param k the index of the entry
+   */
+  private void removeWatch(List<LabelledFormula<P>> watches, int k) {
+    int last = watches.size() - 1;
+    watches.set(k, watches.get(last));
+    watches.remove(last);
+  }
+
+  /**
+   * Helper method to create an array of labelled formulas.
+   *
+   * @param size the size
+   * @return the array
+   */
+  @SuppressWarnings("unchecked")
+  private LabelledFormula<P>[] newArray(int size) {
+    return (LabelledFormula<P>[]) new LabelledFormula<?>[size];
   }
-}
\ No newline at end of file
+}
@@ -7,39 +7,45 @@
 package modalLogic.tableau;
 
 import java.util.*;
-import modalLogic.formula.Constant;
 import modalLogic.formula.Formula;
 import modalLogic.tableau.clashes.ConcreteClashes;
-import org.apache.commons.collections15.MultiMap;
-import org.apache.commons.collections15.multimap.MultiHashMap;
 import util.Pair;
 
 /**
  * A world in the sense of modal logic (i.e. a state in a Kripke Model).
+ * The polarity of the literals is stored in two bitsets over interned
+ * proposition ids. The labelled literals of each proposition are chained
+ * through the labelled formulas themselves.
  *
  * @author Johannes Köster <johannes.koester@tu-dortmund.de>
  */
 public class World<P> {
 
   private int id;
-  private MultiMap<P, LabelledFormula<P>> positive = new MultiHashMap<P, LabelledFormula<P>>();
-  private MultiMap<P, LabelledFormula<P>> negative = new MultiHashMap<P, LabelledFormula<P>>();
-  private MultiMap<Constant, LabelledFormula<P>> posconstants = new MultiHashMap<Constant, LabelledFormula<P>>();
-  private MultiMap<Constant, LabelledFormula<P>> negconstants = new MultiHashMap<Constant, LabelledFormula<P>>();
+  private BitSet positive = new BitSet();
+  private BitSet negative = new BitSet();
+  private LabelledFormula<P>[] positiveLiterals = newLiterals(0);
+  private LabelledFormula<P>[] negativeLiterals = newLiterals(0);
+  private ArrayList<ArrayList<LabelledFormula<P>>> positiveWatches = new ArrayList<ArrayList<LabelledFormula<P>>>();
+  private ArrayList<ArrayList<LabelledFormula<P>>> negativeWatches = new ArrayList<ArrayList<LabelledFormula<P>>>();
+  private LabelledFormula<P> verum;
+  private LabelledFormula<P> falsum;
   private ConcreteClashes<P> clashes = new ConcreteClashes<P>();
-  private Comparator<P> propositionComparator;
+  private FormulaArena<P> arena;
   private LabelledFormula<P> reason;
-  private Collection<Formula<P>> boxFormulae = new ArrayList<Formula<P>>();
+  private int[] boxFormulae = new int[4];
+  private int boxCount = 0;
+  private boolean learned = false;
 
   /**
    * Constructor of class world.
    *
    * @param id the id
-   * @param comparator a proposition comparator
+   * @param arena the compiled formula
    */
-  public World(int id, Comparator<P> comparator) {
+  public World(int id, FormulaArena<P> arena) {
     this.id = id;
-    this.propositionComparator = comparator;
+    this.arena = arena;
   }
 
   /**
@@ -52,12 +58,49 @@ public class World<P> {
   }
 
   /**
-   * Returns the necessity subformulas.
+   * Returns the number of necessity subformulas.
    *
-   * @return the necessity subformulas
+   * @return the number of necessity subformulas
    */
-  public Collection<Formula<P>> getBoxFormulae() {
-    return boxFormulae;
+  public int getBoxFormulaCount() {
+    return boxCount;
+  }
+
+  /**
+   * Returns a necessity subformula.
+   *
+   * @param i the index
+   * @return the id of the child of the necessity subformula
+   */
+  public int getBoxFormula(int i) {
+    return boxFormulae[i];
+  }
+
+  /**
+   * Add a necessity subformula.
+   *
+   * @param id the id of the child of the necessity subformula
+   */
+  public void addBoxFormula(int id) {
+    if (boxCount == boxFormulae.length) {
+      boxFormulae = Arrays.copyOf(boxFormulae, 2 * boxCount);
+    }
+    boxFormulae[boxCount++] = id;
+  }
+
+  /**
+   * Remove a necessity subformula.
+   *
+   * @param id the id of the child of the necessity subformula
+   */
+  public void removeBoxFormula(int id) {
+    for (int i = 0; i < boxCount; i++) {
+      if (boxFormulae[i] == id) {
+        System.arraycopy(boxFormulae, i + 1, boxFormulae, i, boxCount - i - 1);
+        boxCount--;
+        return;
+      }
+    }
   }
 
   /**
@@ -79,6 +122,24 @@ public class World<P> {
     this.reason = reason;
   }
 
+  /**
+   * Returns true if a learned nogood ever added a subformula to this world.
+   * Such a subformula does not follow from the formulas the world was
+   * created with alone.
+   *
+   * @return true if learned subformulas were added
+   */
+  public boolean hasLearnedFormulas() {
+    return learned;
+  }
+
+  /**
+   * Report that a learned nogood added a subformula to this world.
+   */
+  public void setLearnedFormulas() {
+    learned = true;
+  }
+
   /**
    * Returns a string representation.
    *
@@ -95,9 +156,7 @@ public class World<P> {
    * @return the positive literals of this world
    */
   public Collection<LabelledFormula<P>> getPositiveLiterals() {
-    Collection<LabelledFormula<P>> pos = positive.values();
-    pos.addAll(posconstants.values());
-    return pos;
+    return collect(positive, positiveLiterals, verum);
   }
 
   /**
@@ -106,9 +165,74 @@ public class World<P> {
    * @return the negated literals of this world
    */
   public Collection<LabelledFormula<P>> getNegativeLiterals() {
-    Collection<LabelledFormula<P>> neg = negative.values();
-    neg.addAll(negconstants.values());
-    return neg;
+    return collect(negative, negativeLiterals, falsum);
+  }
+
+  /**
+   * Returns the ids of the propositions occurring positive in this world.
+   *
+   * @return the proposition ids, must not be modified
+   */
+  public BitSet getPositive() {
+    return positive;
+  }
+
+  /**
+   * Returns the ids of the propositions occurring negated in this world.
+   *
+   * @return the proposition ids, must not be modified
+   */
+  public BitSet getNegative() {
+    return negative;
+  }
+
+  /**
+   * Returns a labelled literal of this world.
+   *
+   * @param p the proposition id
+   * @param negated whether the literal is negated
+   * @return the labelled literal or null if it does not occur
+   */
+  public LabelledFormula<P> getLiteral(int p, boolean negated) {
+    LabelledFormula<P>[] literals = negated ? negativeLiterals : positiveLiterals;
+    return (p < literals.length) ? literals[p] : null;
+  }
+
+  /**
+   * Returns the disjunctions that watch a literal disjunct in this world (see
+   * class UnitPropagation).
+   *
+   * @param p the proposition id
+   * @param negated whether the watched disjunct is negated
+   * @return the watching disjunctions
+   */
+  public List<LabelledFormula<P>> getWatches(int p, boolean negated) {
+    ArrayList<ArrayList<LabelledFormula<P>>> watches = negated ? negativeWatches : positiveWatches;
+    while (watches.size() <= p) {
+      watches.add(null);
+    }
+    if (watches.get(p) == null) {
+      watches.set(p, new ArrayList<LabelledFormula<P>>(2));
+    }
+    return watches.get(p);
+  }
+
+  /**
+   * Returns true if verum occurs in this world.
+   *
+   * @return true if verum occurs in this world
+   */
+  public boolean hasVerum() {
+    return verum != null;
+  }
+
+  /**
+   * Returns true if falsum occurs in this world.
+   *
+   * @return true if falsum occurs in this world
+   */
+  public boolean hasFalsum() {
+    return falsum != null;
   }
 
   /**
@@ -117,21 +241,26 @@ public class World<P> {
    * @param literal the literal
    */
   public void addLiteral(LabelledFormula<P> literal) {
-    if (literal.getFormula().getType() == Formula.CONSTANT) {
-      if (literal.getFormula().isNegation()) {
-        negconstants.put((Constant) literal.getFormula(), literal);
-        addClashes(literal, positive, posconstants); // search in positive literals for clash
+    int f = literal.getFormulaId();
+    if (arena.getType(f) == Formula.CONSTANT) {
+      if (arena.isNegation(f)) {
+        falsum = link(falsum, literal);
+        clashes.add(literal, literal); // falsum clashes on its own
       } else {
-        posconstants.put((Constant) literal.getFormula(), literal);
-        addClashes(literal, negative, negconstants);
+        verum = link(verum, literal);
       }
     } else {
-      if (literal.getFormula().isNegation()) {
-        negative.put(literal.getFormula().getProposition(), literal);
-        addClashes(literal, positive, posconstants); // search in positive literals for clash
+      int p = arena.getProposition(f);
+      if (arena.isNegation(f)) {
+        negativeLiterals = ensure(negativeLiterals, p);
+        negativeLiterals[p] = link(negativeLiterals[p], literal);
+        negative.set(p);
+        addClashes(literal, positiveLiterals, p); // search in positive literals for clash
       } else {
-        positive.put(literal.getFormula().getProposition(), literal);
-        addClashes(literal, negative, negconstants);
+        positiveLiterals = ensure(positiveLiterals, p);
+        positiveLiterals[p] = link(positiveLiterals[p], literal);
+        positive.set(p);
+        addClashes(literal, negativeLiterals, p);
       }
     }
   }
@@ -142,11 +271,27 @@ public class World<P> {
    * @param literal the literal
    */
   public void removeLiteral(LabelledFormula<P> literal) {
-    P p = literal.getFormula().getProposition();
-    if(literal.getFormula().isNegation())
-    	negative.remove(p);
-    else
-    	positive.remove(p);
+    int f = literal.getFormulaId();
+    if (arena.getType(f) == Formula.CONSTANT) {
+      if (arena.isNegation(f)) {
+        falsum = unlink(falsum, literal);
+      } else {
+        verum = unlink(verum, literal);
+      }
+    } else {
+      int p = arena.getProposition(f);
+      if (arena.isNegation(f)) {
+        negativeLiterals[p] = unlink(negativeLiterals[p], literal);
+        if (negativeLiterals[p] == null) {
+          negative.clear(p);
+        }
+      } else {
+        positiveLiterals[p] = unlink(positiveLiterals[p], literal);
+        if (positiveLiterals[p] == null) {
+          positive.clear(p);
+        }
+      }
+    }
     removeClashes(literal);
   }
 
@@ -175,34 +320,109 @@ public class World<P> {
    * Update clashes for an incoming literal.
    *
    * @param literal the literal
-   * @param literals the other literals
+   * @param literals the literals of opposite polarity
+   * @param p the proposition id of the literal
    */
-  private void addClashes(LabelledFormula<P> literal, MultiMap<P, LabelledFormula<P>> literals, MultiMap<Constant, LabelledFormula<P>> constants) {
-    Collection<LabelledFormula<P>> clashing = literals.get(literal.getFormula().getProposition());
-    if(clashing == null) {
-      clashing = new ArrayList<LabelledFormula<P>>();
-    }
-    clashing.addAll(constants.values());
-    
-    if (!clashing.isEmpty()) {
-      for (LabelledFormula<P> c : clashing) {
+  private void addClashes(LabelledFormula<P> literal, LabelledFormula<P>[] literals, int p) {
+    if (p < literals.length) {
+      for (LabelledFormula<P> c = literals[p]; c != null; c = c.literalNext) {
         clashes.add(literal, c);
       }
     }
   }
 
+  /**
+   * Helper method to collect the literals of the propositions in a bitset.
+   *
+   * @param propositions the proposition ids
+   * @param literals the literal lists
+   * @param constant the list of constants
+   * @return the literals
+   */
+  private Collection<LabelledFormula<P>> collect(BitSet propositions, LabelledFormula<P>[] literals, LabelledFormula<P> constant) {
+    Collection<LabelledFormula<P>> collected = new ArrayList<LabelledFormula<P>>();
+    for (int p = propositions.nextSetBit(0); p >= 0; p = propositions.nextSetBit(p + 1)) {
+      for (LabelledFormula<P> l = literals[p]; l != null; l = l.literalNext) {
+        collected.add(l);
+      }
+    }
+    for (LabelledFormula<P> l = constant; l != null; l = l.literalNext) {
+      collected.add(l);
+    }
+    return collected;
+  }
+
+  /**
+   * Helper method to put a literal in front of a literal list.
+   *
+   * @param head the head of the list
+   * @param literal the literal
+   * @return the new head
+   */
+  private LabelledFormula<P> link(LabelledFormula<P> head, LabelledFormula<P> literal) {
+    literal.literalPrev = null;
+    literal.literalNext = head;
+    if (head != null) {
+      head.literalPrev = literal;
+    }
+    return literal;
+  }
+
+  /**
+   * Helper method to remove a literal from a literal list.
+   *
+   * @param head the head of the list
+   * @param literal the literal
+   * @return the new head
+   */
+  private LabelledFormula<P> unlink(LabelledFormula<P> head, LabelledFormula<P> literal) {
+    if (literal.literalNext != null) {
+      literal.literalNext.literalPrev = literal.literalPrev;
+    }
+    if (literal.literalPrev != null) {
+      literal.literalPrev.literalNext = literal.literalNext;
+    } else if (head == literal) {
+      head = literal.literalNext;
+    }
+    literal.literalPrev = null;
+    literal.literalNext = null;
+    return head;
+  }
+
+  /**
+   * Helper method to grow an array of literal lists.
+   *
+   * @param literals the literal lists
+   * @param p the proposition id that has to fit
+   * @return the literal lists
+   */
+  private LabelledFormula<P>[] ensure(LabelledFormula<P>[] literals, int p) {
+    if (p < literals.length) {
+      return literals;
+    }
+    LabelledFormula<P>[] grown = newLiterals(Math.max(p + 1, arena.getPropositionCount()));
+    System.arraycopy(literals, 0, grown, 0, literals.length);
+    return grown;
+  }
+
+  /**
+   * Helper method to create an array of literal lists.
+   *
+   * @param size the size
+   * @return the array
+   */
+  @SuppressWarnings("unchecked")
+  private static <P> LabelledFormula<P>[] newLiterals(int size) {
+    return (LabelledFormula<P>[]) new LabelledFormula<?>[size];
+  }
+
   /**
    * Remove clashes of a given literal.
    *
    * @param literal the literal
    */
   private void removeClashes(LabelledFormula<P> literal) {
-    Iterator<Pair<LabelledFormula<P>>> clash = clashes.iterator();
-    while (clash.hasNext()) {
-      if (clash.next().contains(literal)) {
-        clash.remove();
-      }
-    }
+    clashes.remove(literal);
   }
 
   @Override
@@ -9,16 +9,22 @@ package modalLogic.tableau;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.List;
 import org.apache.commons.collections15.MultiMap;
 import org.apache.commons.collections15.multimap.MultiHashMap;
 import util.Pair;
 
 /**
- * Models a reachability relation between two worlds (see Kripke Models)
+ * Models a reachability relation between two worlds (see Kripke Models).
+ * The relation is stored as successor and predecessor lists indexed by world id.
+ *
  * @author Johannes Köster <johannes.koester@tu-dortmund.de>
  */
-public class WorldRelation<P> extends HashSet<Pair<World<P>>> {
+public class WorldRelation<P> {
+  private ArrayList<List<World<P>>> succ = new ArrayList<List<World<P>>>();
+  private ArrayList<List<World<P>>> pred = new ArrayList<List<World<P>>>();
+  private int size = 0;
   private MultiMap<LabelledFormula<P>, Pair<World<P>>> resulting =
           new MultiHashMap<LabelledFormula<P>, Pair<World<P>>>();
 
@@ -34,10 +40,11 @@ public class WorldRelation<P> extends HashSet<Pair<World<P>>> {
   /**
    * Clear the relation.
    */
-  @Override
   public void clear() {
-    super.clear();
+    succ.clear();
+    pred.clear();
     resulting.clear();
+    size = 0;
   }
 
   /**
@@ -47,34 +54,54 @@ public class WorldRelation<P> extends HashSet<Pair<World<P>>> {
    * @param w1 a world
    * @param reason the reason
    */
-  public void add(World w0, World w1, LabelledFormula<P> reason) {
-    Pair<World<P>> rel = new Pair<World<P>>(w0, w1);
-    add(rel);
-    /*Set<Pair<World<P>>> rs = resulting.get(reason);
-    if(rs == null) {
-      rs = new HashSet<Pair<World<P>>>();
-      resulting.put(reason, rs);
-    }
-    rs.add(rel);*/
+  public void add(World<P> w0, World<P> w1, LabelledFormula<P> reason) {
+    adjacent(succ, w0.getId(), true).add(w1);
+    adjacent(pred, w1.getId(), true).add(w0);
+    size++;
 
-    resulting.put(reason, rel);
+    resulting.put(reason, new Pair<World<P>>(w0, w1));
   }
 
   /**
-   * Returns the reachable worlds for a given one.
+   * Returns the reachable worlds for a given one. The returned collection is
+   * backed by the relation and must not be modified.
    *
    * @param world the world
    * @return the reachable worlds
    */
   public Collection<World<P>> succ(World<P> world) {
-    Collection<World<P>> succ = new ArrayList<World<P>>();
+    return adjacent(succ, world.getId(), false);
+  }
 
-    for(Pair<World<P>> w : this) {
-      if(w.getFirst().equals(world)) {
-        succ.add(w.getSecond());
-      }
-    }
-    return succ;
+  /**
+   * Returns the worlds a given one is reachable from. The returned collection
+   * is backed by the relation and must not be modified.
+   *
+   * @param world the world
+   * @return the preceding worlds
+   */
+  public Collection<World<P>> pred(World<P> world) {
+    return adjacent(pred, world.getId(), false);
+  }
+
+  /**
+   * Returns true if the second world is reachable from the first.
+   *
+   * @param w0 a world
+   * @param w1 a world
+   * @return true if the worlds are related
+   */
+  public boolean contains(World<P> w0, World<P> w1) {
+    return adjacent(succ, w0.getId(), false).contains(w1);
+  }
+
+  /**
+   * Returns the number of related pairs of worlds.
+   *
+   * @return the number of related pairs
+   */
+  public int size() {
+    return size;
   }
 
   /**
@@ -84,8 +111,32 @@ public class WorldRelation<P> extends HashSet<Pair<World<P>>> {
    */
   public void removeCausedBy(LabelledFormula<P> f) {
     Collection<Pair<World<P>>> res = resulting.get(f);
-    if(res != null)
-      removeAll(res);
+    if(res != null) {
+      for(Pair<World<P>> r : res) {
+        adjacent(succ, r.getFirst().getId(), false).remove(r.getSecond());
+        adjacent(pred, r.getSecond().getId(), false).remove(r.getFirst());
+        size--;
+      }
+    }
     resulting.remove(f);
   }
+
+  /**
+   * Helper method to return the adjacency list of a world.
+   *
+   * @param lists the successor or predecessor lists
+   * @param id the world id
+   * @param create whether a missing list should be created
+   * @return the adjacency list
+   */
+  private List<World<P>> adjacent(ArrayList<List<World<P>>> lists, int id, boolean create) {
+    if(id >= lists.size() || lists.get(id) == null) {
+      if(!create)
+        return Collections.emptyList();
+      while(lists.size() <= id)
+        lists.add(null);
+      lists.set(id, new ArrayList<World<P>>(2));
+    }
+    return lists.get(id);
+  }
 }
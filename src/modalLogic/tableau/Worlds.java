@@ -8,7 +8,6 @@
 package modalLogic.tableau;
 
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.Iterator;
 
 /**
@@ -19,17 +18,14 @@ import java.util.Iterator;
 public class Worlds<P> extends ArrayList<World<P>> {
   private int count = 0;
   private World<P> start;
-  private Comparator<P> propositionComparator;
   private Tableau<P> tableau;
 
   /**
    * Constructor of class Worlds.
    *
    * @param tableau the tableau
-   * @param propositionComparator a proposition comparator
    */
-  public Worlds(Tableau<P> tableau, Comparator<P> propositionComparator) {
-    this.propositionComparator = propositionComparator;
+  public Worlds(Tableau<P> tableau) {
     this.tableau = tableau;
   }
 
@@ -76,8 +72,8 @@ public class Worlds<P> extends ArrayList<World<P>> {
    *
    * @return the new world
    */
-  public World newWorld() {
-    World<P> w = new World<P>(count++, propositionComparator);
+  public World<P> newWorld() {
+    World<P> w = new World<P>(count++, tableau.getArena());
     add(w);
     return w;
   }
@@ -8,15 +8,27 @@
 package modalLogic.tableau.clashes;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
 import modalLogic.tableau.LabelledFormula;
 import util.Pair;
 
 /**
- * Container for pairs of clashing subformulas.
+ * Container for pairs of clashing subformulas. The pairs are indexed by
+ * their subformulas so that removing the clashes of a subformula only
+ * touches the pairs it takes part in.
  *
  * @author Johannes Köster <johannes.koester@tu-dortmund.de>
  */
-public class ConcreteClashes<P> extends ArrayList<Pair<LabelledFormula<P>>> {
+public class ConcreteClashes<P> implements Iterable<Pair<LabelledFormula<P>>> {
+  private LinkedHashSet<Pair<LabelledFormula<P>>> clashes =
+          new LinkedHashSet<Pair<LabelledFormula<P>>>();
+  private Map<LabelledFormula<P>, Collection<Pair<LabelledFormula<P>>>> index =
+          new IdentityHashMap<LabelledFormula<P>, Collection<Pair<LabelledFormula<P>>>>();
 
   /**
    * Add two clashing subformulas.
@@ -25,6 +37,74 @@ public class ConcreteClashes<P> extends ArrayList<Pair<LabelledFormula<P>>> {
    * @param f2 a subformula
    */
   public void add(LabelledFormula<P> f1, LabelledFormula<P> f2) {
-    add(new Pair<LabelledFormula<P>>(f1, f2));
+    Pair<LabelledFormula<P>> clash = new Pair<LabelledFormula<P>>(f1, f2);
+    if(clashes.add(clash)) {
+      pairsOf(f1).add(clash);
+      pairsOf(f2).add(clash);
+    }
+  }
+
+  /**
+   * Remove all clashes a given subformula takes part in.
+   *
+   * @param f the subformula
+   */
+  public void remove(LabelledFormula<P> f) {
+    Collection<Pair<LabelledFormula<P>>> pairs = index.remove(f);
+    if(pairs == null)
+      return;
+    for(Pair<LabelledFormula<P>> clash : pairs) {
+      clashes.remove(clash);
+      LabelledFormula<P> other = (clash.getFirst() == f) ? clash.getSecond() : clash.getFirst();
+      Collection<Pair<LabelledFormula<P>>> otherPairs = index.get(other);
+      if(otherPairs != null) {
+        otherPairs.remove(clash);
+        if(otherPairs.isEmpty())
+          index.remove(other);
+      }
+    }
+  }
+
+  /**
+   * Returns true if there are no clashes.
+   *
+   * @return true if there are no clashes
+   */
+  public boolean isEmpty() {
+    return clashes.isEmpty();
+  }
+
+  /**
+   * Returns the number of clashes.
+   *
+   * @return the number of clashes
+   */
+  public int size() {
+    return clashes.size();
+  }
+
+  /**
+   * Iterator over all clashes.
+   *
+   * @return the iterator
+   */
+  @Override
+  public Iterator<Pair<LabelledFormula<P>>> iterator() {
+    return Collections.unmodifiableSet(clashes).iterator();
+  }
+
+  /**
+   * Helper method to return the clashes of a subformula.
+   *
+   * @param f the subformula
+   * @return the clashes
+   */
+  private Collection<Pair<LabelledFormula<P>>> pairsOf(LabelledFormula<P> f) {
+    Collection<Pair<LabelledFormula<P>>> pairs = index.get(f);
+    if(pairs == null) {
+      pairs = new ArrayList<Pair<LabelledFormula<P>>>(2);
+      index.put(f, pairs);
+    }
+    return pairs;
   }
 }
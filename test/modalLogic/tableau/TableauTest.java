@@ -4,8 +4,20 @@
  */
 package modalLogic.tableau;
 
+import java.io.StringWriter;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 import modalLogic.formula.Formula;
 import modalLogic.formula.factory.FormulaFactory;
 import modalLogic.formula.io.StringPropositionMap;
@@ -216,4 +228,721 @@ public class TableauTest {
     System.out.println(tableau.getWorlds().get(0).getPositiveLiterals());
     assertEquals(true, satisfiable);
   }
+
+  /**
+   * Test of proofSearch method when a literal is undone that also holds for
+   * another reason.
+   */
+  @org.junit.Test
+  public void testUndoDuplicateLiteral() {
+    // A ∧ ((A ∧ ¬A) ∨ ¬A), undoing the first disjunct must keep A
+    FormulaFactory<String> ff = new FormulaFactory<String>();
+    ff.openConjunction();
+    ff.literal("A");
+    ff.openDisjunction();
+    ff.openConjunction();
+    ff.literal("A");
+    ff.negation();
+    ff.literal("A");
+    ff.close();
+    ff.negation();
+    ff.literal("A");
+    ff.close();
+    ff.close();
+
+    Tableau<String> tableau = new Tableau<String>();
+    tableau.setFormula(ff.create());
+    assertEquals(false, tableau.proofSearch());
+  }
+
+  /**
+   * Test of proofSearch method for literals and constants.
+   */
+  @org.junit.Test
+  public void testConstantClashes() {
+    // ⊤ ∧ ¬A, a literal does not clash with a constant
+    FormulaFactory<String> ff = new FormulaFactory<String>();
+    ff.openConjunction();
+    ff.constant(true);
+    ff.negation();
+    ff.literal("A");
+    ff.close();
+    Tableau<String> tableau = new Tableau<String>();
+    tableau.setFormula(ff.create());
+    assertEquals(true, tableau.proofSearch());
+
+    // A ∧ ⊥, falsum clashes on its own
+    ff.openConjunction();
+    ff.literal("A");
+    ff.constant(false);
+    ff.close();
+    tableau = new Tableau<String>();
+    tableau.setFormula(ff.create());
+    assertEquals(false, tableau.proofSearch());
+  }
+
+  /**
+   * Test of proofSearch method when a clash occurs while other subformulas
+   * are still unexpanded.
+   */
+  @org.junit.Test
+  public void testClashBeforeExpansion() {
+    // (¬A ∧ (¬B ∧ C)) ∧ (A ∨ B), ¬B ∧ C is still unexpanded when A and ¬A clash
+    FormulaFactory<String> ff = new FormulaFactory<String>();
+    ff.openConjunction();
+    ff.openConjunction();
+    ff.negation();
+    ff.literal("A");
+    ff.openConjunction();
+    ff.negation();
+    ff.literal("B");
+    ff.literal("C");
+    ff.close();
+    ff.close();
+    ff.openDisjunction();
+    ff.literal("A");
+    ff.literal("B");
+    ff.close();
+    ff.close();
+
+    Tableau<String> tableau = new Tableau<String>();
+    tableau.setFormula(ff.create());
+    assertEquals(false, tableau.proofSearch());
+  }
+
+  /**
+   * Test of proofSearch method with different expansion schedulers.
+   */
+  @org.junit.Test
+  public void testScheduler() {
+    FormulaFactory<String> ff = new FormulaFactory<String>();
+    ff.openConjunction();
+    ff.possibility();
+    ff.literal("A");
+    ff.openDisjunction();
+    ff.necessity();
+    ff.negation();
+    ff.literal("A");
+    ff.literal("C");
+    ff.close();
+    ff.negation();
+    ff.literal("C");
+    ff.close();
+    Formula<String> f = ff.create();
+    System.out.println(f);
+
+    Tableau<String> tableau = new Tableau<String>();
+    tableau.setFormula(f);
+    assertEquals(false, tableau.proofSearch());
+
+    tableau = new Tableau<String>();
+    tableau.setScheduler(new LifoScheduler<String>());
+    tableau.setFormula(f);
+    assertEquals(false, tableau.proofSearch());
+
+    tableau = new Tableau<String>();
+    tableau.setScheduler(new PriorityScheduler<String>(Formula.POSSIBILITY, Formula.DISJUNCTION));
+    tableau.setFormula(f);
+    assertEquals(false, tableau.proofSearch());
+  }
+
+  @org.junit.Test
+  public void testUnitPropagation() {
+    FormulaFactory<String> ff = new FormulaFactory<String>();
+    ff.openConjunction();
+    ff.openDisjunction();
+    ff.literal("A");
+    ff.literal("B");
+    ff.close();
+    ff.close();
+
+    Tableau<String> tableau = new Tableau<String>();
+    tableau.setHeuristics(new DefaultHeuristics<String>(tableau));
+    tableau.setFormula(ff.create());
+    assertEquals(true, tableau.proofSearch());
+    assertEquals(1, tableau.getDisjunctions().size());
+    int level = tableau.getDisjunctions().getLevel();
+
+    // the choice of A leaves only C of ¬A ∨ C
+    ff.openDisjunction();
+    ff.negation();
+    ff.literal("A");
+    ff.literal("C");
+    ff.close();
+    Formula<String> unit = ff.create();
+    tableau.appendFormula(unit);
+    assertEquals(true, tableau.proofSearch());
+    assertEquals(1, tableau.getDisjunctions().size());
+    World<String> w = tableau.getWorlds().getStart();
+    LabelledFormula<String> c = tableau.getLabelledFormula(w, unit.getChild(1));
+    assertEquals(FormulaState.ACTIVE, c.getState());
+    assertEquals(tableau.getLabelledFormula(w, unit), c.propagatedFrom);
+    BitSet dependencies = new BitSet();
+    dependencies.set(level);
+    assertEquals(dependencies, c.getDependencies());
+    assertEquals(1, tableau.getLabelledFormulae(unit.getChild(1)).size());
+  }
+
+  @org.junit.Test
+  public void testSemanticBranching() {
+    // ((A ∧ ¬C) ∨ B) ∧ (¬A ∨ C) ∧ (¬B ∨ C) ∧ (¬B ∨ ¬C)
+    FormulaFactory<String> ff = new FormulaFactory<String>();
+    ff.openConjunction();
+    ff.openDisjunction();
+    ff.openConjunction();
+    ff.literal("A");
+    ff.negation();
+    ff.literal("C");
+    ff.close();
+    ff.literal("B");
+    ff.close();
+    ff.openDisjunction();
+    ff.negation();
+    ff.literal("A");
+    ff.literal("C");
+    ff.close();
+    ff.openDisjunction();
+    ff.negation();
+    ff.literal("B");
+    ff.literal("C");
+    ff.close();
+    ff.openDisjunction();
+    ff.negation();
+    ff.literal("B");
+    ff.negation();
+    ff.literal("C");
+    ff.close();
+    ff.close();
+    Formula<String> f = ff.create();
+
+    // asserting the complement of the refuted disjunct A ∧ ¬C saves expansions
+    long[] expansions = new long[2];
+    for(int semantic = 0; semantic < 2; semantic++) {
+      Tableau<String> tableau = new Tableau<String>();
+      tableau.setSemanticBranching(semantic == 1);
+      tableau.setFormula(f);
+      SearchBudget budget = new SearchBudget();
+      assertEquals(TableauState.UNSATISFIABLE, tableau.proofSearch(budget));
+      expansions[semantic] = budget.getExpansions();
+    }
+    assertTrue(expansions[1] < expansions[0]);
+
+    // ((A ∧ ¬C) ∨ B) ∧ (¬A ∨ D) ∧ (¬D ∨ C)
+    ff.openConjunction();
+    ff.subformula(f.getChild(0));
+    ff.openDisjunction();
+    ff.negation();
+    ff.literal("A");
+    ff.literal("D");
+    ff.close();
+    ff.openDisjunction();
+    ff.negation();
+    ff.literal("D");
+    ff.literal("C");
+    ff.close();
+    ff.close();
+    f = ff.create();
+
+    for(boolean semantic : new boolean[] {false, true}) {
+      Tableau<String> tableau = new Tableau<String>();
+      tableau.setSemanticBranching(semantic);
+      tableau.setFormula(f);
+      assertEquals(true, tableau.proofSearch());
+
+      // A ∧ ¬C is refuted, its complement holds independently of the choice of B
+      World<String> w = tableau.getWorlds().getStart();
+      LabelledFormula<String> disjunction = tableau.getLabelledFormula(w, f.getChild(0));
+      LabelledFormula<String> disjunct = tableau.getLabelledFormula(w, f.getChild(0).getChild(0));
+      assertEquals(FormulaState.BLOCKED, disjunct.getState());
+      FormulaArena<String> arena = tableau.getArena();
+      LabelledFormula<String> complement = tableau.getLabelledFormula(w,
+              arena.getComplement(disjunct.getFormulaId()));
+      if(semantic) {
+        assertTrue(tableau.getBranch().getTrail().contains(complement));
+        assertFalse(complement.getDependencies().get(disjunction.getDecisionLevel()));
+      }
+      else
+        assertNull(complement);
+    }
+  }
+
+  @org.junit.Test
+  public void testNogoods() {
+    // all eight clauses over A, B and C
+    Formula<String> f = clauses(8);
+
+    for(int capacity : new int[] {0, 1, 2048}) {
+      Tableau<String> tableau = new Tableau<String>();
+      tableau.getNogoods().setCapacity(capacity);
+      tableau.setFormula(f);
+      assertEquals(false, tableau.proofSearch());
+      assertTrue(tableau.getNogoods().size() <= capacity);
+    }
+  }
+
+  @org.junit.Test
+  public void testRestarts() {
+    // all eight clauses over A, B and C, and the same without the last one
+    for(int clauses = 8; clauses >= 7; clauses--) {
+      Formula<String> f = clauses(clauses);
+
+      for(RestartPolicy policy : new RestartPolicy[] {new NoRestarts(), new LubyRestarts(1), new GeometricRestarts(1, 1.5)}) {
+        Tableau<String> tableau = new Tableau<String>();
+        tableau.setRestartPolicy(policy);
+        tableau.setFormula(f);
+        assertEquals(clauses < 8, tableau.proofSearch());
+      }
+    }
+  }
+
+  @org.junit.Test
+  public void testSatisfiabilityCache() {
+    FormulaFactory<String> ff = new FormulaFactory<String>();
+    ff.openConjunction();
+    ff.possibility();
+    ff.literal("A");
+    ff.literal("B");
+    ff.close();
+    Formula<String> f = ff.create();
+
+    Tableau<String> tableau = new Tableau<String>();
+    tableau.setFormula(f);
+    assertEquals(true, tableau.proofSearch());
+    assertEquals(1, tableau.getSatisfiabilityCache().size());
+
+    // the label set of the world is cached as satisfiable
+    ff.possibility();
+    ff.literal("A");
+    tableau.appendFormula(ff.create());
+    assertEquals(true, tableau.proofSearch());
+    assertEquals(2, tableau.getWorlds().size());
+
+    // the closed possibility subformula has to be expanded again
+    ff.necessity();
+    ff.negation();
+    ff.literal("A");
+    tableau.appendFormula(ff.create());
+    assertEquals(false, tableau.proofSearch());
+  }
+
+  @org.junit.Test
+  public void testKripkeModel() throws Exception {
+    FormulaFactory<String> ff = new FormulaFactory<String>();
+    ff.openConjunction();
+    ff.possibility();
+    ff.literal("A");
+    ff.literal("B");
+    ff.close();
+    Formula<String> f = ff.create();
+
+    Tableau<String> tableau = new Tableau<String>();
+    tableau.setFormula(f);
+    assertEquals(true, tableau.proofSearch());
+    KripkeModel<String> model = tableau.getKripkeModel();
+    assertEquals(2, model.getWorldCount());
+    assertEquals(1, model.getSuccessorCount(0));
+    assertTrue(model.holds(0, model.getPropositionId("B")));
+    assertTrue(model.holds(1, model.getPropositionId("A")));
+    assertTrue(model.satisfies(0, f));
+
+    // the possibility subformula closed by the cache shares the successor
+    ff.possibility();
+    ff.literal("A");
+    tableau.appendFormula(ff.create());
+    assertEquals(true, tableau.proofSearch());
+    model = tableau.getKripkeModel();
+    assertEquals(1, model.getSuccessorCount(0));
+    assertTrue(model.satisfies(0, tableau.getFormula()));
+    StringWriter writer = new StringWriter();
+    model.write(writer);
+    assertEquals("s0: B -> s1\ns1: A ->\n", writer.toString());
+
+    ff.necessity();
+    ff.negation();
+    ff.literal("A");
+    tableau.appendFormula(ff.create());
+    assertEquals(false, tableau.proofSearch());
+    try {
+      tableau.getKripkeModel();
+      fail();
+    }
+    catch(IllegalStateException e) {
+    }
+  }
+
+  @org.junit.Test
+  public void testSuccessorExecutor() {
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      // three successor worlds, the last one contradicts the necessity subformula
+      for(int worlds = 2; worlds <= 3; worlds++) {
+        FormulaFactory<String> ff = new FormulaFactory<String>();
+        ff.openConjunction();
+        for(int i = 0; i < worlds; i++) {
+          ff.possibility();
+          ff.openConjunction();
+          ff.literal(String.valueOf((char) ('A' + i)));
+          ff.literal("D");
+          ff.close();
+        }
+        ff.necessity();
+        ff.negation();
+        ff.literal("C");
+        ff.close();
+        Formula<String> f = ff.create();
+        System.out.println(f);
+
+        Tableau<String> tableau = new Tableau<String>();
+        tableau.getSatisfiabilityCache().setExecutor(executor);
+        tableau.getSatisfiabilityCache().setMinimumSize(1);
+        tableau.setFormula(f);
+        assertEquals(worlds < 3, tableau.proofSearch());
+        // the successor worlds were decided by separate tableaux
+        assertEquals(1, tableau.getWorlds().size());
+      }
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @org.junit.Test
+  public void testBudget() {
+    // all eight clauses over A, B and C in a successor world, and the same without the last one
+    for(int clauses = 8; clauses >= 7; clauses--) {
+      FormulaFactory<String> ff = new FormulaFactory<String>();
+      ff.possibility();
+      ff.subformula(clauses(clauses));
+      Formula<String> f = ff.create();
+
+      // resume the search after every single step
+      Tableau<String> tableau = new Tableau<String>();
+      tableau.setFormula(f);
+      SearchBudget budget = new SearchBudget();
+      int resumes = 0;
+      budget.setMaxExpansions(1);
+      while(tableau.proofSearch(budget) == TableauState.UNKNOWN) {
+        assertEquals(BudgetLimit.EXPANSIONS, budget.getExhausted());
+        budget.setMaxExpansions(budget.getExpansions() + 1);
+        resumes++;
+      }
+      assertTrue(resumes > 0);
+      assertNull(budget.getExhausted());
+      assertEquals(clauses < 8 ? TableauState.SATISFIABLE : TableauState.UNSATISFIABLE, tableau.getState());
+
+      // restarts continue their sequence when the search is resumed after every backtrack
+      tableau = new Tableau<String>();
+      tableau.setRestartPolicy(new LubyRestarts(1));
+      tableau.setFormula(f);
+      budget = new SearchBudget();
+      resumes = 0;
+      budget.setMaxBacktracks(1);
+      while(tableau.proofSearch(budget) == TableauState.UNKNOWN) {
+        assertEquals(BudgetLimit.BACKTRACKS, budget.getExhausted());
+        assertTrue(++resumes < 1000);
+        budget.setMaxBacktracks(budget.getBacktracks() + 1);
+      }
+      assertEquals(clauses < 8 ? TableauState.SATISFIABLE : TableauState.UNSATISFIABLE, tableau.getState());
+
+      // a cancelled budget stops the search at the next check
+      tableau = new Tableau<String>();
+      tableau.setFormula(f);
+      budget = new SearchBudget();
+      budget.setMaxBacktracks(0);
+      budget.cancel();
+      if(tableau.proofSearch(budget) == TableauState.UNKNOWN)
+        assertEquals(BudgetLimit.BACKTRACKS, budget.getExhausted());
+      budget.setMaxBacktracks(Long.MAX_VALUE);
+      assertEquals(TableauState.UNKNOWN, tableau.proofSearch(budget));
+      assertEquals(BudgetLimit.CANCELLED, budget.getExhausted());
+    }
+  }
+
+  @org.junit.Test
+  public void testExecutorBudget() throws Exception {
+    // the only thread of the executor is blocked until the first search was stopped
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    final CountDownLatch latch = new CountDownLatch(1);
+    try {
+      executor.submit(new Callable<Object>() {
+        @Override
+        public Object call() throws InterruptedException {
+          latch.await();
+          return null;
+        }
+      });
+
+      FormulaFactory<String> ff = new FormulaFactory<String>();
+      ff.openConjunction();
+      ff.possibility();
+      ff.literal("A");
+      ff.necessity();
+      ff.negation();
+      ff.literal("A");
+      ff.close();
+      Formula<String> f = ff.create();
+      System.out.println(f);
+
+      Tableau<String> tableau = new Tableau<String>();
+      tableau.getSatisfiabilityCache().setExecutor(executor);
+      tableau.getSatisfiabilityCache().setMinimumSize(1);
+      tableau.setFormula(f);
+      SearchBudget budget = new SearchBudget();
+      budget.setTimeout(50, TimeUnit.MILLISECONDS);
+      assertEquals(TableauState.UNKNOWN, tableau.proofSearch(budget));
+      assertEquals(BudgetLimit.DEADLINE, budget.getExhausted());
+      assertFalse(tableau.getSatisfiabilityCache().isStopped());
+
+      // the possibility subformula is decided when the search is resumed
+      latch.countDown();
+      assertEquals(false, tableau.proofSearch());
+      assertEquals(1, tableau.getWorlds().size());
+    }
+    finally {
+      latch.countDown();
+      executor.shutdownNow();
+    }
+  }
+
+  @org.junit.Test
+  public void testBatch() throws Exception {
+    // clauses over A, B and C, unsatisfiable for all eight clauses
+    List<Formula<String>> formulas = new ArrayList<Formula<String>>();
+    for(int k = 0; k < 20; k++) {
+      formulas.add(clauses(5 + k % 4));
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(3);
+    try {
+      BatchSolver<String> solver = new BatchSolver<String>(executor, new Tableau<String>());
+      solver.setMaxPending(4);
+      List<BatchResult<String>> results = solver.solve(formulas);
+      assertEquals(formulas.size(), results.size());
+      for(int k = 0; k < results.size(); k++) {
+        assertEquals(k, results.get(k).getIndex());
+        assertEquals(k % 4 != 3, results.get(k).isSatisfiable());
+        assertTrue(results.get(k).getExpansions() > 0);
+      }
+
+      // results as they complete, each with a budget of a single expansion
+      solver.setMaxExpansions(1);
+      Set<Integer> indices = new HashSet<Integer>();
+      Iterator<BatchResult<String>> it = solver.solve(formulas.iterator(), false);
+      while(it.hasNext()) {
+        BatchResult<String> result = it.next();
+        assertEquals(TableauState.UNKNOWN, result.getState());
+        assertEquals(BudgetLimit.EXPANSIONS, result.getExhausted());
+        indices.add(result.getIndex());
+      }
+      assertEquals(formulas.size(), indices.size());
+
+      // the threads get new tableaux after releasing the old ones
+      solver.release();
+      solver.setMaxExpansions(Long.MAX_VALUE);
+      results = solver.solve(formulas);
+      for(int k = 0; k < results.size(); k++)
+        assertEquals(k % 4 != 3, results.get(k).isSatisfiable());
+
+      // a single formula belongs to no batch
+      BatchResult<String> result = solver.submit(formulas.get(3)).get();
+      assertEquals(-1, result.getIndex());
+      assertFalse(result.isSatisfiable());
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @org.junit.Test
+  public void testScopes() {
+    // the knowledge base (A | B) & (~A | C) & <>(D & E)
+    FormulaFactory<String> ff = new FormulaFactory<String>();
+    ff.openConjunction();
+    ff.openDisjunction();
+    ff.literal("A");
+    ff.literal("B");
+    ff.close();
+    ff.openDisjunction();
+    ff.negation();
+    ff.literal("A");
+    ff.literal("C");
+    ff.close();
+    ff.possibility();
+    ff.openConjunction();
+    ff.literal("D");
+    ff.literal("E");
+    ff.close();
+    ff.close();
+
+    Tableau<String> tableau = new Tableau<String>();
+    tableau.setFormula(ff.create());
+    assertEquals(true, tableau.proofSearch());
+
+    // ~B & ~C contradicts the knowledge base
+    tableau.push();
+    ff.negation();
+    ff.literal("B");
+    tableau.assume(ff.create());
+    assertEquals(true, tableau.proofSearch());
+    tableau.push();
+    ff.negation();
+    ff.literal("C");
+    tableau.assume(ff.create());
+    assertEquals(false, tableau.proofSearch());
+    tableau.pop();
+    assertEquals(TableauState.UNKNOWN, tableau.getState());
+    assertEquals(true, tableau.proofSearch());
+
+    // so does []~D
+    ff.necessity();
+    ff.negation();
+    ff.literal("D");
+    tableau.assume(ff.create());
+    assertEquals(false, tableau.proofSearch());
+    tableau.pop();
+    assertEquals(0, tableau.getScopeCount());
+    assertEquals(true, tableau.proofSearch());
+  }
+
+  @org.junit.Test
+  public void testClone() {
+    FormulaFactory<String> ff = new FormulaFactory<String>();
+    ff.openConjunction();
+    ff.openDisjunction();
+    ff.literal("A");
+    ff.literal("B");
+    ff.close();
+    ff.possibility();
+    ff.literal("C");
+    ff.close();
+
+    Tableau<String> tableau = new Tableau<String>();
+    tableau.setFormula(ff.create());
+    assertEquals(true, tableau.proofSearch());
+
+    // the clone shares the formula until it appends to it
+    Tableau<String> clone = tableau.clone();
+    assertSame(tableau.getFormula(), clone.getFormula());
+    ff.openConjunction();
+    ff.negation();
+    ff.literal("A");
+    ff.negation();
+    ff.literal("B");
+    ff.close();
+    clone.appendFormula(ff.create());
+    assertNotSame(tableau.getFormula(), clone.getFormula());
+    assertEquals(2, tableau.getFormula().getChildCount());
+    assertEquals(false, clone.proofSearch());
+    assertEquals(true, tableau.proofSearch());
+
+    ff.necessity();
+    ff.negation();
+    ff.literal("C");
+    tableau.appendFormula(ff.create());
+    assertEquals(false, tableau.proofSearch());
+  }
+
+  @org.junit.Test
+  public void testHeuristics() {
+    // all eight clauses over A, B and C, and the same without the last one
+    for(int clauses = 8; clauses >= 7; clauses--) {
+      Formula<String> f = clauses(clauses);
+
+      for(RestartPolicy policy : new RestartPolicy[] {new NoRestarts(), new LubyRestarts(1)}) {
+        Tableau<String> tableau = new Tableau<String>();
+        tableau.setHeuristics(new DefaultHeuristics<String>(tableau));
+        tableau.setRestartPolicy(policy);
+        tableau.setFormula(f);
+        assertEquals(clauses < 8, tableau.proofSearch());
+
+        tableau = new Tableau<String>();
+        tableau.setHeuristics(new ActivityHeuristics<String>(tableau, 0.5));
+        tableau.setRestartPolicy(policy.create());
+        tableau.setFormula(f);
+        assertEquals(clauses < 8, tableau.proofSearch());
+        assertTrue(tableau.clone().getHeuristics() instanceof ActivityHeuristics);
+
+        for(int weighting : new int[] {OccurrenceHeuristics.MOMS, OccurrenceHeuristics.JEROSLOW_WANG}) {
+          tableau = new Tableau<String>();
+          tableau.setHeuristics(new OccurrenceHeuristics<String>(tableau, weighting));
+          tableau.setRestartPolicy(policy.create());
+          tableau.setFormula(f);
+          assertEquals(clauses < 8, tableau.proofSearch());
+        }
+      }
+    }
+  }
+
+  @org.junit.Test
+  public void testPortfolio() {
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      // all eight clauses over A, B and C, and the same without the last one
+      for(int clauses = 8; clauses >= 7; clauses--) {
+        Formula<String> f = clauses(clauses);
+
+        PortfolioTableau<String> portfolio = new PortfolioTableau<String>(executor);
+        portfolio.addConfigurations(new Tableau<String>(), 6);
+        assertEquals(6, portfolio.getConfigurations().size());
+        portfolio.setFormula(f);
+        assertEquals(clauses < 8, portfolio.proofSearch());
+        assertEquals(clauses < 8 ? TableauState.SATISFIABLE : TableauState.UNSATISFIABLE, portfolio.getState());
+        // the formula itself is not touched
+        assertEquals(clauses, f.getChildCount());
+      }
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @org.junit.Test
+  public void testOrParallel() {
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      // all eight clauses over A, B and C in a successor world, and the same without the last one
+      for(int clauses = 8; clauses >= 7; clauses--) {
+        FormulaFactory<String> ff = new FormulaFactory<String>();
+        ff.possibility();
+        ff.subformula(clauses(clauses));
+        Formula<String> f = ff.create();
+
+        OrParallelTableau<String> search = new OrParallelTableau<String>(pool, new Tableau<String>());
+        // split at every disjunction
+        search.setGranularity(1);
+        search.setFormula(f);
+        assertEquals(clauses < 8, search.proofSearch());
+        assertEquals(clauses < 8 ? TableauState.SATISFIABLE : TableauState.UNSATISFIABLE, search.getState());
+        assertEquals(clauses < 8, search.getModel() != null);
+        if(clauses == 8)
+          assertTrue(search.getSplitCount() > 0);
+      }
+    }
+    finally {
+      pool.shutdownNow();
+    }
+  }
+
+  /**
+   * Returns the conjunction of the first n of the eight clauses over A, B
+   * and C. The conjunction is unsatisfiable only for all eight clauses.
+   *
+   * @param n the number of clauses
+   * @return the conjunction
+   */
+  private static Formula<String> clauses(int n) {
+    FormulaFactory<String> ff = new FormulaFactory<String>();
+    ff.openConjunction();
+    for(int i = 0; i < n; i++) {
+      ff.openDisjunction();
+      for(int j = 0; j < 3; j++) {
+        if((i & (1 << j)) != 0)
+          ff.negation();
+        ff.literal(String.valueOf((char) ('A' + j)));
+      }
+      ff.close();
+    }
+    ff.close();
+    return ff.create();
+  }
 }